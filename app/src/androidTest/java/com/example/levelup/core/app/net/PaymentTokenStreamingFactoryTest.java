@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.net;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+
+import com.scvngr.levelup.core.model.PaymentToken;
+import com.scvngr.levelup.core.model.factory.json.PaymentTokenJsonFactory;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+import java.io.StringReader;
+
+/**
+ * Tests {@link PaymentTokenStreamingFactory} against the SDK's {@link PaymentTokenJsonFactory}.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public final class PaymentTokenStreamingFactoryTest extends TestCase {
+
+    private static final String TOKEN = "\"data\": \"LU02000TEST0123456789\", \"id\": 1";
+
+    private static final String OTHER_TOKEN = "\"data\": \"LU02000OTHER987654321\", \"id\": 2";
+
+    public void testFrom_bare() throws Exception {
+        assertSameAsSdk("{" + TOKEN + "}");
+    }
+
+    public void testFrom_bareWithUnknownMembers() throws Exception {
+        assertSameAsSdk("{\"unknown\": [1, {\"id\": 3}], " + TOKEN + ", \"other\": null}");
+    }
+
+    public void testFrom_wrapped() throws Exception {
+        assertSameAsSdk("{\"payment_token\": {" + TOKEN + "}}");
+    }
+
+    public void testFrom_wrappedAfterOtherMembers() throws Exception {
+        assertSameAsSdk("{\"unknown\": {\"id\": 3}, \"payment_token\": {" + TOKEN + "}}");
+    }
+
+    public void testFrom_wrappedAfterBareMembers() throws Exception {
+        assertSameAsSdk("{" + OTHER_TOKEN + ", \"payment_token\": {" + TOKEN + "}}");
+    }
+
+    public void testFrom_wrappedBeforeBareMembers() throws Exception {
+        assertSameAsSdk("{\"payment_token\": {" + TOKEN + "}, " + OTHER_TOKEN + "}");
+    }
+
+    /**
+     * Asserts that the streaming factory reads the same token as the SDK's factory.
+     *
+     * @param json the JSON of the token.
+     * @throws Exception if either factory couldn't read the token.
+     */
+    private static void assertSameAsSdk(String json) throws Exception {
+        PaymentToken expected = new PaymentTokenJsonFactory().from(new JSONObject(json));
+        JsonReader reader = new JsonReader(new StringReader(json));
+        PaymentToken actual;
+
+        try {
+            actual = new PaymentTokenStreamingFactory().from(reader);
+        } finally {
+            reader.close();
+        }
+
+        assertEquals(expected.getData(), actual.getData());
+        assertEquals(expected.getId(), actual.getId());
+    }
+}
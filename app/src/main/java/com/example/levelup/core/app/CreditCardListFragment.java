@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app;
+
+import android.os.Bundle;
+import android.support.v4.app.ListFragment;
+import android.support.v4.app.LoaderManager.LoaderCallbacks;
+import android.support.v4.content.Loader;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import com.example.levelup.core.app.net.ListRequestLoader;
+import com.example.levelup.core.app.net.ListRequestLoader.ListResult;
+import com.example.levelup.core.app.net.RequestResultUtil;
+import com.scvngr.levelup.core.model.CreditCard;
+import com.scvngr.levelup.core.model.factory.json.CreditCardJsonFactory;
+import com.scvngr.levelup.core.net.LevelUpResponse;
+import com.scvngr.levelup.core.net.LevelUpStatus;
+import com.scvngr.levelup.core.net.request.factory.CreditCardRequestFactory;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A fragment which lists the user's credit cards. This demonstrates loading a list with
+ * {@link ListRequestLoader}: cards are shown as they're parsed, rather than once the whole
+ * response has been read.
+ */
+public class CreditCardListFragment extends ListFragment implements
+        LoaderCallbacks<ListResult<CreditCard>> {
+
+    /**
+     * Loader ID for the card list.
+     */
+    private static final int LOADER_CREDIT_CARDS = 400;
+
+    private CreditCardAdapter mAdapter;
+
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+
+        mAdapter = new CreditCardAdapter(LayoutInflater.from(getActivity()));
+        setListAdapter(mAdapter);
+        setEmptyText(getString(R.string.credit_card_list_empty));
+        setListShown(false);
+
+        getLoaderManager().initLoader(LOADER_CREDIT_CARDS, null, this);
+    }
+
+    @Override
+    public Loader<ListResult<CreditCard>> onCreateLoader(int id, Bundle args) {
+        return new ListRequestLoader<CreditCard>(getActivity().getApplicationContext(),
+                new CreditCardRequestFactory(getActivity(),
+                        new SharedPreferencesAccessTokenRetriever()).buildGetCreditCardsRequest(),
+                new CreditCardJsonFactory());
+    }
+
+    @Override
+    public void onLoadFinished(Loader<ListResult<CreditCard>> loader,
+            ListResult<CreditCard> result) {
+        // The items are a read-only view that's replaced, not copied, with each partial result.
+        mAdapter.setCards(result.getItems());
+
+        if (!result.getItems().isEmpty() || result.isComplete()) {
+            setListShown(true);
+        }
+
+        LevelUpResponse response = result.getResponse();
+
+        if (result.isComplete() && response != null
+                && !LevelUpStatus.OK.equals(response.getStatus())) {
+            setEmptyText(RequestResultUtil.errorsToString(result));
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<ListResult<CreditCard>> loader) {
+        mAdapter.setCards(Collections.<CreditCard> emptyList());
+    }
+
+    /**
+     * Shows each card's description in a single line.
+     */
+    private static final class CreditCardAdapter extends BaseAdapter {
+        private final LayoutInflater mInflater;
+        private List<CreditCard> mCards = Collections.emptyList();
+
+        /**
+         * @param inflater the inflater for the item views.
+         */
+        public CreditCardAdapter(LayoutInflater inflater) {
+            mInflater = inflater;
+        }
+
+        /**
+         * @param cards the cards to show. This is held, not copied, so it mustn't change.
+         */
+        public void setCards(List<CreditCard> cards) {
+            mCards = cards;
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public int getCount() {
+            return mCards.size();
+        }
+
+        @Override
+        public CreditCard getItem(int position) {
+            return mCards.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return getItem(position).getId();
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            TextView view = (TextView) convertView;
+
+            if (view == null) {
+                view =
+                        (TextView) mInflater.inflate(android.R.layout.simple_list_item_1, parent,
+                                false);
+            }
+
+            view.setText(getItem(position).getDescription());
+
+            return view;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import com.example.levelup.core.app.example1.LoginAndPaymentActivity;
 import com.example.levelup.core.app.example2.PaymentActivity;
 import com.example.levelup.core.app.example3.PaymentWithTipActivity;
 import com.example.levelup.core.app.example4.CreditCardAddActivity;
+import com.example.levelup.core.app.example4.CreditCardListActivity;
 
 /**
  * Launcher for the various demos.
@@ -40,6 +41,7 @@ public class EnterpriseDemoActivity extends FragmentActivity implements OnClickL
         findViewById(R.id.button_register).setOnClickListener(this);
         findViewById(R.id.button_payment_with_tip).setOnClickListener(this);
         findViewById(R.id.button_credit_card_add).setOnClickListener(this);
+        findViewById(R.id.button_credit_card_list).setOnClickListener(this);
     }
 
     @Override
@@ -60,6 +62,9 @@ public class EnterpriseDemoActivity extends FragmentActivity implements OnClickL
             case R.id.button_credit_card_add:
                 startActivity(new Intent(this, CreditCardAddActivity.class));
                 break;
+            case R.id.button_credit_card_list:
+                startActivity(new Intent(this, CreditCardListActivity.class));
+                break;
             default:
                 // Do nothing.
         }
@@ -15,23 +15,125 @@
 package com.example.levelup.core.app;
 
 import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
 
+import com.example.levelup.core.app.qr.BitmapPool;
+import com.example.levelup.core.app.qr.DiskCodeCache;
+import com.example.levelup.core.app.qr.LruCodeCache;
 import com.scvngr.levelup.core.util.CoreLibConstants;
+import com.scvngr.levelup.core.util.LogManager;
 import com.scvngr.levelup.core.util.NullUtils;
 import com.scvngr.levelup.deeplinkauth.util.DeeplinkAuthLibConstants;
 
+import java.io.File;
+
 /**
- * Application subclass to assert that the environment is correctly configured.
+ * Application subclass to assert that the environment is correctly configured. This also owns the
+ * application-wide caches, and shrinks them when the system is low on memory.
  */
 public class LevelUpSampleApplication extends Application {
     private static final String PROGUARDED_ASSERTION_ERROR_FORMAT =
             "Release builds must apply ProGuard but %s was not ProGuarded.";
 
+    /**
+     * The name of the directory under the cache directory where LevelUp codes are stored.
+     */
+    private static final String CODE_CACHE_DIRECTORY = "levelup_codes";
+
+    /**
+     * The LevelUp code images, shared by every code view in the app. As this outlives activities
+     * and fragments, codes that were already rendered reappear instantly after a configuration
+     * change or when moving between the payment screens. Codes are also kept on disk, so the last
+     * code can be shown on the first frame after a cold start.
+     */
+    private LruCodeCache mCodeCache;
+
+    /**
+     * Bitmaps of codes that are no longer displayed, for the code generators to reuse.
+     */
+    private final BitmapPool mBitmapPool = new BitmapPool();
+
+    /**
+     * @param context any context in this application.
+     * @return the application-wide LevelUp code cache.
+     */
+    public static LruCodeCache getCodeCache(Context context) {
+        return ((LevelUpSampleApplication) context.getApplicationContext()).getCodeCache();
+    }
+
+    /**
+     * @param context any context in this application.
+     * @return the application-wide pool of code bitmaps.
+     */
+    public static BitmapPool getBitmapPool(Context context) {
+        return ((LevelUpSampleApplication) context.getApplicationContext()).getBitmapPool();
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
 
         assertApplicationProperlyConfigured();
+
+        mCodeCache =
+                new LruCodeCache(LruCodeCache.DEFAULT_MAX_SIZE_BYTES, new DiskCodeCache(new File(
+                        getCacheDir(), CODE_CACHE_DIRECTORY), DiskCodeCache.DEFAULT_MAX_ENTRIES));
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+
+        trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        trimMemory(level);
+    }
+
+    /**
+     * @return the application-wide LevelUp code cache.
+     */
+    public LruCodeCache getCodeCache() {
+        return mCodeCache;
+    }
+
+    /**
+     * @return the application-wide pool of code bitmaps.
+     */
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * Shrinks the caches in proportion to the memory pressure: each level trims at least as much
+     * as the levels below it. Everything that's dropped can be rebuilt: pooled bitmaps are simply
+     * allocated again, and codes evicted from memory are still on disk. Only called on API 14 and
+     * up, apart from {@link #onLowMemory()}.
+     * 
+     * @param level one of the {@link ComponentCallbacks2} {@code TRIM_MEMORY_*} levels.
+     */
+    private void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            // The process is next in line to be killed, so keep only what's on disk.
+            mBitmapPool.clear();
+            mCodeCache.trimToSize(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            /*
+             * This covers the UI being hidden and the process being in the background too. Keep
+             * half of the codes, so that the payment code comes back quickly.
+             */
+            mBitmapPool.clear();
+            mCodeCache.trimToSize(mCodeCache.getMaxSizeBytes() / 2);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            mBitmapPool.trimToSize(mBitmapPool.getMaxSizeBytes() / 2);
+        }
+
+        LogManager.v("Trimmed memory for level %d: %s, %s", level, mCodeCache, mBitmapPool);
     }
 
     private void assertApplicationProperlyConfigured() {
@@ -13,27 +13,41 @@
  */
 package com.example.levelup.core.app;
 
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
+import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
 import android.support.v4.content.Loader;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver.OnGlobalLayoutListener;
 import android.view.Window;
 import android.view.WindowManager;
 import android.view.WindowManager.LayoutParams;
 import android.widget.TextView;
 
+import com.example.levelup.core.app.net.PaymentTokenStreamingFactory;
 import com.example.levelup.core.app.net.RequestLoader;
 import com.example.levelup.core.app.net.RequestLoader.RequestResult;
 import com.example.levelup.core.app.net.RequestResultUtil;
+import com.example.levelup.core.app.qr.BitmapPool;
+import com.example.levelup.core.app.qr.DisplayCodeCache;
+import com.example.levelup.core.app.qr.LruCodeCache;
+import com.example.levelup.core.app.qr.PrioritizedCodeLoader;
+import com.example.levelup.core.app.qr.PrioritizedCodeLoader.OnCodeSetLoadedListener;
 import com.example.levelup.core.app.qr.ZXingCodeGenerator;
 import com.scvngr.levelup.core.model.PaymentToken;
 import com.scvngr.levelup.core.model.factory.json.PaymentTokenJsonFactory;
@@ -41,13 +55,13 @@ import com.scvngr.levelup.core.model.qr.LevelUpCode;
 import com.scvngr.levelup.core.model.tip.PercentageTip;
 import com.scvngr.levelup.core.net.LevelUpStatus;
 import com.scvngr.levelup.core.net.request.factory.PaymentTokenRequestFactory;
-import com.scvngr.levelup.core.ui.view.AsyncTaskCodeLoader;
-import com.scvngr.levelup.core.ui.view.HashMapCache;
-import com.scvngr.levelup.core.ui.view.LevelUpCodeLoader;
 import com.scvngr.levelup.core.ui.view.LevelUpCodeView;
 import com.scvngr.levelup.core.ui.view.LevelUpCodeView.OnCodeLoadListener;
+import com.scvngr.levelup.core.ui.view.LevelUpQrCodeGenerator.LevelUpQrCodeImage;
+import com.scvngr.levelup.core.util.LogManager;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 
 /**
  * A fragment that displays the user's LevelUp payment code. This also refreshes the cached payment
@@ -63,30 +77,72 @@ public final class PaymentCodeFragment extends Fragment {
             + ".STATE_TIP_INT";
 
     /**
-     * Loader of the QR code images.
+     * Cache of the QR code images. This is shared across the application.
      */
-    private LevelUpCodeLoader mCodeLoader;
+    private LruCodeCache mCodeCache;
 
     /**
-     * Callback for when the QR code is loading.
+     * Keeps the displayed codes scaled to the size of {@link #mCodeView}, in front of
+     * {@link #mCodeCache}.
      */
-    private OnCodeLoadListener mCodeLoadingListener = new OnCodeLoadListener() {
+    private DisplayCodeCache mDisplayCodeCache;
 
-        @Override
-        public void onCodeLoad(boolean isLoading) {
-            if (isLoading) {
-                setUiState(UI_STATE_LOADING);
-            } else {
-                setUiState(UI_STATE_SHOWING_CODE);
-            }
-        }
-    };
+    /**
+     * Shrinks {@link #mDisplayCodeCache} under memory pressure, or {@code null} below API 14.
+     */
+    private TrimMemoryCallbacks mTrimMemoryCallbacks;
+
+    /**
+     * Loader of the QR code images.
+     */
+    private PrioritizedCodeLoader mCodeLoader;
 
     /**
      * The view that displays the QR codes.
      */
     private LevelUpCodeView mCodeView;
 
+    /**
+     * The view that loads the next code off-screen while {@link #mCodeView} keeps showing the
+     * current one. The two views are swapped once the next code has loaded. It's always
+     * {@link View#INVISIBLE}, so that it's laid out the same as {@link #mCodeView}.
+     */
+    private LevelUpCodeView mBackCodeView;
+
+    /**
+     * The code loaded into {@link #mCodeView}, or {@code null} if there's none.
+     */
+    private String mCode;
+
+    /**
+     * The code loaded into {@link #mBackCodeView}, or {@code null} if there's none.
+     */
+    private String mBackCode;
+
+    /**
+     * The scaled code that {@link #mCodeView} displays, retained from {@link #mDisplayCodeCache},
+     * or {@code null} if it displays an unscaled one.
+     */
+    @Nullable
+    private LevelUpQrCodeImage mCodeImage;
+
+    /**
+     * The scaled code that {@link #mBackCodeView} displays, retained from
+     * {@link #mDisplayCodeCache}, or {@code null} if it displays an unscaled one.
+     */
+    @Nullable
+    private LevelUpQrCodeImage mBackCodeImage;
+
+    /**
+     * Set while {@link #mBackCodeView} is loading a code that should be swapped in.
+     */
+    private boolean mIsBackCodePending = false;
+
+    /**
+     * The state the UI was last set to by {@link #setUiState(int)}.
+     */
+    private int mUiState = UI_STATE_LOADING;
+
     /**
      * The user's chosen color.
      */
@@ -115,11 +171,27 @@ public final class PaymentCodeFragment extends Fragment {
 
     private boolean mPreCacheTipsWasDeferred = false;
 
+    /**
+     * The direction the tip last moved through {@link #mPreCacheTips}: positive towards the end,
+     * negative towards the start, or 0 if it hasn't moved.
+     */
+    private int mTipDirection = 0;
+
     /**
      * The user's chosen tip value.
      */
     private int mTip = 0;
 
+    /**
+     * The codes for {@link #mPreCacheTips}, or {@code null} until the tips are known.
+     */
+    private TipCodeTable mTipCodeTable;
+
+    /**
+     * The index of {@link #mTip} in {@link #mTipCodeTable}, or -1 if it isn't in it.
+     */
+    private int mTipIndex = -1;
+
     /**
      * The UI shows a progress indicator.
      */
@@ -140,6 +212,17 @@ public final class PaymentCodeFragment extends Fragment {
      */
     private static final int MSG_TURN_OFF_SCREEN_BRIGHT = 200;
 
+    /**
+     * Message for {@link PaymentCodeFragmentHandler} to show the code for the current tip and
+     * color.
+     */
+    private static final int MSG_SHOW_CODE = 201;
+
+    /**
+     * How long a tip change waits for further changes before its code is shown.
+     */
+    private static final long TIP_CHANGE_THROTTLE_MILLIS = 100;
+
     /**
      * The timeout before the screen brightness override. Set to 1 minute.
      */
@@ -156,10 +239,25 @@ public final class PaymentCodeFragment extends Fragment {
 
         /*
          * The code loader is responsible for loading the images of the QR codes that are displayed
-         * to the user using the LevelUpCodeView. In this instance, images are generated using the
-         * ZXing library and cached in memory.
+         * to the user using the LevelUpCodeView. Images are generated using the ZXing library and
+         * kept in the application's code cache, behind a cache of copies scaled to the view. Both
+         * share the application's bitmap pool.
          */
-        mCodeLoader = new AsyncTaskCodeLoader(new ZXingCodeGenerator(), new HashMapCache());
+        BitmapPool bitmapPool = LevelUpSampleApplication.getBitmapPool(getActivity());
+        mCodeCache = LevelUpSampleApplication.getCodeCache(getActivity());
+        mDisplayCodeCache =
+                new DisplayCodeCache(mCodeCache, DisplayCodeCache.DEFAULT_MAX_SIZE_BYTES,
+                        bitmapPool);
+        mCodeLoader =
+                new PrioritizedCodeLoader(new ZXingCodeGenerator(Bitmap.Config.ALPHA_8, true,
+                        bitmapPool), mDisplayCodeCache);
+
+        // Memory trim levels are only reported on API 14 and up.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            mTrimMemoryCallbacks = new TrimMemoryCallbacks();
+            getActivity().getApplicationContext().registerComponentCallbacks(
+                    mTrimMemoryCallbacks);
+        }
     }
 
     @Override
@@ -168,11 +266,41 @@ public final class PaymentCodeFragment extends Fragment {
         return inflater.inflate(R.layout.fragment_payment, container, false);
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+
+        // The views are gone, so their bitmaps can be reused.
+        mDisplayCodeCache.releaseCode(mCodeImage);
+        mDisplayCodeCache.releaseCode(mBackCodeImage);
+        mCodeImage = null;
+        mBackCodeImage = null;
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
 
+        if (mTrimMemoryCallbacks != null) {
+            getActivity().getApplicationContext().unregisterComponentCallbacks(
+                    mTrimMemoryCallbacks);
+            mTrimMemoryCallbacks = null;
+        }
+
+        LogManager.v("Code cache stats: %s, %s", mCodeCache, mDisplayCodeCache);
+        mDisplayCodeCache.clear();
+        mDisplayCodeCache = null;
         mCodeLoader = null;
+        mCodeCache = null;
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+
+        if (mDisplayCodeCache != null) {
+            mDisplayCodeCache.trimToSize(0);
+        }
     }
 
     @Override
@@ -182,6 +310,7 @@ public final class PaymentCodeFragment extends Fragment {
         mPaymentToken = null;
         setForceFullBrightness(false);
         mHandler.removeMessages(MSG_TURN_OFF_SCREEN_BRIGHT);
+        mHandler.removeMessages(MSG_SHOW_CODE);
     }
 
     @Override
@@ -213,14 +342,37 @@ public final class PaymentCodeFragment extends Fragment {
         super.onViewCreated(view, savedInstanceState);
 
         mCodeView = (LevelUpCodeView) getView().findViewById(R.id.payment_qr_code);
-        mCodeView.setOnCodeLoadListener(mCodeLoadingListener);
+        mCodeView.setOnCodeLoadListener(new CodeLoadListener(mCodeView));
+        mBackCodeView = (LevelUpCodeView) getView().findViewById(R.id.payment_qr_code_back);
+        mBackCodeView.setOnCodeLoadListener(new CodeLoadListener(mBackCodeView));
+        mUiState = UI_STATE_LOADING;
+
+        // Both code views are laid out the same, so either one gives the display size.
+        view.getViewTreeObserver().addOnGlobalLayoutListener(new OnGlobalLayoutListener() {
+            @Override
+            public void onGlobalLayout() {
+                if (mCodeView == null || mDisplayCodeCache == null) {
+                    return;
+                }
+
+                int width =
+                        mCodeView.getWidth() - mCodeView.getPaddingLeft()
+                                - mCodeView.getPaddingRight();
+                int height =
+                        mCodeView.getHeight() - mCodeView.getPaddingTop()
+                                - mCodeView.getPaddingBottom();
+
+                mDisplayCodeCache.setDisplaySize(width, height);
+            }
+        });
     }
 
     /**
      * Pre-cache the QR code images for the given tip values. This makes it so that the user can
-     * slide the tip slider and the images will already be loaded. If the payment token changes,
-     * this will need to be run again. If the payment token hasn't loaded yet, the codes will be
-     * cached upon a successful load.
+     * slide the tip slider and the images will already be loaded. The tips closest to the current
+     * one are cached first, favoring the direction the tip last moved in. If the color or payment
+     * token changes, this will need to be run again. If the payment token hasn't loaded yet, the
+     * codes will be cached upon a successful load.
      * 
      * @param tips the list of tip values to pre-cache.
      */
@@ -228,8 +380,13 @@ public final class PaymentCodeFragment extends Fragment {
         String cachedPaymentToken = getCachedPaymentToken();
         mPreCacheTips = tips;
 
+        if (mTipCodeTable == null || !mTipCodeTable.isFor(tips)) {
+            mTipCodeTable = new TipCodeTable(tips);
+            mTipIndex = mTipCodeTable.indexOfTip(mTip);
+        }
+
         if (cachedPaymentToken != null) {
-            preCacheCodesForTipsInternal(cachedPaymentToken, tips);
+            preCacheTipLadder(cachedPaymentToken);
         } else {
             // Defer the pre-caching until the payment token has been loaded.
             mPreCacheTipsWasDeferred = true;
@@ -287,7 +444,7 @@ public final class PaymentCodeFragment extends Fragment {
          * ineligible.
          */
         if (mPreCacheTipsWasDeferred && paymentToken != null) {
-            preCacheCodesForTipsInternal(paymentToken, mPreCacheTips);
+            preCacheTipLadder(paymentToken);
             mPreCacheTipsWasDeferred = false;
         }
     }
@@ -302,21 +459,40 @@ public final class PaymentCodeFragment extends Fragment {
             mColor = color;
 
             showCachedPaymentCode();
+
             // Refresh the pre-cached images.
-            preCacheCodesForTips(mPreCacheTips);
+            if (mPreCacheTips != null) {
+                preCacheCodesForTips(mPreCacheTips);
+            }
         }
     }
 
     /**
-     * Sets the tip percentage.
+     * Sets the tip percentage. The code is updated at most once every
+     * {@link #TIP_CHANGE_THROTTLE_MILLIS}, for the latest tip, so that when the tip slider is
+     * dragged, only a few codes are requested rather than one for every tip passed along the way.
+     * The codes that aren't cached yet are re-queued at the same time, nearest to the new tip
+     * first and favoring the direction the tip is moving in.
      * 
      * @param tip the tip percentage. A value between 0 and 100.
      */
     public void setTip(int tip) {
         if (mTip != tip) {
+            if (mTipCodeTable != null) {
+                int tipIndex = mTipCodeTable.indexOfTip(tip);
+
+                if (tipIndex >= 0 && mTipIndex >= 0) {
+                    mTipDirection = tipIndex - mTipIndex;
+                }
+
+                mTipIndex = tipIndex;
+            }
+
             mTip = tip;
 
-            showCachedPaymentCode();
+            if (!mHandler.hasMessages(MSG_SHOW_CODE)) {
+                mHandler.sendEmptyMessageDelayed(MSG_SHOW_CODE, TIP_CHANGE_THROTTLE_MILLIS);
+            }
         }
     }
 
@@ -327,10 +503,17 @@ public final class PaymentCodeFragment extends Fragment {
      * @param paymentToken the loaded payment token.
      */
     protected void onPaymentTokenLoaded(PaymentToken paymentToken) {
-        setCachedPaymentToken(paymentToken);
         String paymentTokenString = paymentToken.getData();
+        boolean isNewToken = !paymentTokenString.equals(getCachedPaymentToken());
+
+        setCachedPaymentToken(paymentToken);
         showPaymentCode(paymentTokenString);
 
+        // None of a new token's codes are cached, so the whole ladder needs to be generated.
+        if (isNewToken && mPreCacheTips != null) {
+            mPreCacheTipsWasDeferred = true;
+        }
+
         preCacheDeferredCodes();
     }
 
@@ -340,6 +523,8 @@ public final class PaymentCodeFragment extends Fragment {
      */
     private void clearCachedPaymentToken() {
         mPaymentToken = null;
+        onPaymentTokenChanged(null);
+
         PreferenceManager.getDefaultSharedPreferences(getActivity()).edit()
                 .remove(SharedPreferencesKeys.PAYMENT_TOKEN).apply();
     }
@@ -384,6 +569,7 @@ public final class PaymentCodeFragment extends Fragment {
 
         View fragmentView = getView();
 
+        mUiState = uiState;
         mCodeView.setVisibility(qrCodeVisibility);
         fragmentView.findViewById(R.id.progress).setVisibility(progressVisibility);
         fragmentView.findViewById(R.id.error_message).setVisibility(errorMessageVisibility);
@@ -420,6 +606,11 @@ public final class PaymentCodeFragment extends Fragment {
                         PreferenceManager.getDefaultSharedPreferences(context).getString(
                                 SharedPreferencesKeys.PAYMENT_TOKEN, null);
                 mPaymentToken = paymentToken;
+
+                // Codes cached before launch belong to the stored token.
+                if (paymentToken != null && mCodeCache != null) {
+                    mCodeCache.setNamespace(paymentToken);
+                }
             }
         }
 
@@ -437,15 +628,96 @@ public final class PaymentCodeFragment extends Fragment {
     }
 
     /**
-     * Actually performs the pre-caching of QR codes for the given list of tips. Does not block.
+     * Pre-caches the QR codes for every tip in {@link #mTipCodeTable}, for the payment token and
+     * the current color, as one set that the code loader spreads across all of the cores. This is
+     * run whenever the payment token, the color or the tips change, as each of them changes every
+     * code in the ladder. Codes that are already cached are skipped. Does not block; the time it
+     * took to warm the ladder is logged once the whole set has loaded.
      * 
      * @param cachedPaymentToken payment token for code.
-     * @param tips list of tips to pre-cache.
      */
-    private void preCacheCodesForTipsInternal(String cachedPaymentToken, int[] tips) {
-        for (int tipPercent : tips) {
-            mCodeLoader.loadLevelUpCode(LevelUpCode.encodeLevelUpCode(cachedPaymentToken, mColor,
-                    new PercentageTip(tipPercent)));
+    private void preCacheTipLadder(String cachedPaymentToken) {
+        final long startTime = SystemClock.elapsedRealtime();
+
+        mCodeLoader.preCacheLevelUpCodes(getUncachedTipCodes(cachedPaymentToken),
+                new OnCodeSetLoadedListener() {
+                    @Override
+                    public void onCodeSetLoaded(String[] qrCodeData, LevelUpQrCodeImage[] images) {
+                        LogManager.v("Pre-cached %d tip codes in %d ms", qrCodeData.length,
+                                SystemClock.elapsedRealtime() - startTime);
+                    }
+                });
+    }
+
+    /**
+     * Re-queues the tip codes that aren't cached yet around the current tip, so that the ones the
+     * slider is heading towards are generated next. Codes that are already queued are only moved.
+     */
+    private void reorderPreCachedCodes() {
+        String paymentToken = getCachedPaymentToken();
+
+        if (mTipCodeTable != null && paymentToken != null) {
+            mCodeLoader.preCacheLevelUpCodes(getUncachedTipCodes(paymentToken), null);
+        }
+    }
+
+    /**
+     * @param cachedPaymentToken payment token for code.
+     * @return the codes of the tips in {@link #mTipCodeTable} that aren't cached yet, for the
+     *         current color, in the order they should be pre-cached. See
+     *         {@link #getPreCacheOrder()}.
+     */
+    private String[] getUncachedTipCodes(String cachedPaymentToken) {
+        // The current tip's code is requested by showPaymentCode().
+        int[] order = getPreCacheOrder();
+        ArrayList<String> uncachedCodes = new ArrayList<String>(order.length);
+
+        for (int tipIndex : order) {
+            String code = mTipCodeTable.getCode(cachedPaymentToken, tipIndex, mColor);
+
+            if (!mCodeCache.hasCode(code,
+                    mTipCodeTable.getCodeHash(cachedPaymentToken, tipIndex, mColor))) {
+                uncachedCodes.add(code);
+            }
+        }
+
+        return uncachedCodes.toArray(new String[uncachedCodes.size()]);
+    }
+
+    /**
+     * @return the indexes of the tips other than the current one, in the order their codes should
+     *         be pre-cached. See {@link TipPreCacheOrder}.
+     */
+    private int[] getPreCacheOrder() {
+        int currentIndex = mTipIndex;
+
+        if (currentIndex < 0) {
+            // Start from the closest tip in the ladder.
+            currentIndex = TipPreCacheOrder.indexOfTip(mPreCacheTips, mTip);
+        }
+
+        return TipPreCacheOrder.getNeighborFirstIndexOrder(mTipCodeTable.getTipCount(),
+                currentIndex, mTipDirection);
+    }
+
+    /**
+     * Drops everything that was derived from the previous payment token: pending pre-caching, the
+     * cached codes, the scaled codes and the tip code table. The code cache moves to a namespace
+     * for the new token, which drops the old codes in constant time.
+     * 
+     * @param paymentToken the new payment token, or {@code null} if there's no usable token.
+     */
+    private void onPaymentTokenChanged(@Nullable String paymentToken) {
+        if (mCodeLoader == null) {
+            return;
+        }
+
+        mCodeLoader.cancelPreCaching();
+        mCodeCache.setNamespace(paymentToken);
+        mDisplayCodeCache.clear();
+
+        if (mTipCodeTable != null) {
+            mTipCodeTable.clear();
         }
     }
 
@@ -456,6 +728,10 @@ public final class PaymentCodeFragment extends Fragment {
      * @param paymentToken the payment token to cache.
      */
     private void setCachedPaymentToken(PaymentToken paymentToken) {
+        if (!paymentToken.getData().equals(getCachedPaymentToken())) {
+            onPaymentTokenChanged(paymentToken.getData());
+        }
+
         mPaymentToken = paymentToken.getData();
 
         PreferenceManager.getDefaultSharedPreferences(getActivity()).edit()
@@ -487,13 +763,156 @@ public final class PaymentCodeFragment extends Fragment {
 
     /**
      * Loads the payment token into the {@link LevelUpCodeView}. This is where the code is encoded
-     * as well, given the payment token, color, and tip values.
+     * as well, given the payment token, color, and tip values. If the code is still waiting to be
+     * pre-cached, it's moved ahead of the rest.
+     * 
+     * If a code is already being shown, the new one is loaded into the hidden back view instead,
+     * and the two views are swapped once it's ready. The current code stays on screen until then,
+     * or if the new one fails to load, so a scanner never sees a blank code while the tip changes.
      * 
      * @param paymentTokenData the payment token.
      */
     private void showPaymentCode(String paymentTokenData) {
-        mCodeView.setLevelUpCode(LevelUpCode.encodeLevelUpCode(paymentTokenData, mColor, new PercentageTip(mTip)),
-                mCodeLoader);
+        String code;
+
+        if (mTipIndex >= 0) {
+            code = mTipCodeTable.getCode(paymentTokenData, mTipIndex, mColor);
+        } else {
+            // The tip isn't in the ladder, so its code isn't in the table.
+            code =
+                    LevelUpCode.encodeLevelUpCode(paymentTokenData, mColor, new PercentageTip(
+                            mTip));
+        }
+
+        if (mUiState == UI_STATE_SHOWING_CODE && code.equals(mBackCode)
+                && mBackCodeView.isCodeLoaded()) {
+            /*
+             * The back view already shows this code, for example when the tip goes back to the one
+             * shown before. Setting it again may not call the listener, so swap right away.
+             */
+            mIsBackCodePending = false;
+            swapCodeViews();
+        } else if (mUiState == UI_STATE_SHOWING_CODE) {
+            mIsBackCodePending = true;
+            mBackCode = code;
+            mBackCodeView.setLevelUpCode(code, mCodeLoader);
+        } else {
+            // Whatever the back view is still loading is stale now.
+            mIsBackCodePending = false;
+            mCode = code;
+            mCodeView.setLevelUpCode(code, mCodeLoader);
+        }
+
+        mCodeLoader.prioritize(code);
+    }
+
+    /**
+     * Brings the back view, which has loaded its code, to the front. Both visibility changes happen
+     * in the same frame.
+     */
+    private void swapCodeViews() {
+        LevelUpCodeView backCodeView = mBackCodeView;
+        String backCode = mBackCode;
+        LevelUpQrCodeImage backCodeImage = mBackCodeImage;
+
+        mBackCodeView = mCodeView;
+        mBackCode = mCode;
+        mBackCodeImage = mCodeImage;
+        mCodeView = backCodeView;
+        mCode = backCode;
+        mCodeImage = backCodeImage;
+
+        mCodeView.setVisibility(View.VISIBLE);
+        mBackCodeView.setVisibility(View.INVISIBLE);
+    }
+
+    /**
+     * Retains the scaled code that a view has just loaded, so that its bitmap isn't reused while
+     * the view draws it, and releases the one it displayed before.
+     * 
+     * @param view the view that has loaded its code.
+     */
+    private void retainLoadedCode(LevelUpCodeView view) {
+        if (view == mCodeView) {
+            mDisplayCodeCache.releaseCode(mCodeImage);
+            mCodeImage = mDisplayCodeCache.retainCode(mCode);
+        } else {
+            mDisplayCodeCache.releaseCode(mBackCodeImage);
+            mBackCodeImage = mDisplayCodeCache.retainCode(mBackCode);
+        }
+    }
+
+    /**
+     * Callback for when the QR code of one of the code views is loading.
+     */
+    private final class CodeLoadListener implements OnCodeLoadListener {
+        private final LevelUpCodeView mView;
+
+        /**
+         * @param view the view that this listens to.
+         */
+        public CodeLoadListener(LevelUpCodeView view) {
+            mView = view;
+        }
+
+        @Override
+        public void onCodeLoad(boolean isLoading) {
+            if (!isLoading && mView.isCodeLoaded()) {
+                retainLoadedCode(mView);
+            }
+
+            if (mView == mCodeView) {
+                if (isLoading) {
+                    setUiState(UI_STATE_LOADING);
+                } else {
+                    setUiState(UI_STATE_SHOWING_CODE);
+                }
+            } else if (!isLoading && mIsBackCodePending && mUiState == UI_STATE_SHOWING_CODE) {
+                mIsBackCodePending = false;
+
+                // The front view keeps showing its code while the back one loads, and if the back
+                // one fails.
+                if (mView.isCodeLoaded()) {
+                    swapCodeViews();
+                }
+            }
+        }
+    }
+
+    /**
+     * Shrinks the scaled codes when the system is low on memory. The application trims the caches
+     * it owns itself, see {@link LevelUpSampleApplication}. Only registered on API 14 and up.
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private final class TrimMemoryCallbacks implements ComponentCallbacks2 {
+
+        @Override
+        public void onTrimMemory(int level) {
+            if (mDisplayCodeCache == null) {
+                return;
+            }
+
+            /*
+             * The codes on screen are still held by the views, so this only drops the copies that
+             * would let neighboring codes be swapped in without scaling them again. This covers
+             * both a critical foreground shortage and the UI being hidden.
+             */
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+                mDisplayCodeCache.trimToSize(0);
+            } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+                mDisplayCodeCache.trimToSize(mDisplayCodeCache.getMaxSizeBytes() / 2);
+            }
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            // Do nothing.
+        }
+
+        @Override
+        public void onLowMemory() {
+            // Handled by PaymentCodeFragment#onLowMemory().
+        }
     }
 
     /**
@@ -514,7 +933,7 @@ public final class PaymentCodeFragment extends Fragment {
 
             return new RequestLoader<PaymentToken>(context, new PaymentTokenRequestFactory(context,
                     new SharedPreferencesAccessTokenRetriever()).buildGetPaymentTokenRequest(),
-                    new PaymentTokenJsonFactory());
+                    new PaymentTokenJsonFactory(), new PaymentTokenStreamingFactory());
         }
 
         @Override
@@ -543,7 +962,7 @@ public final class PaymentCodeFragment extends Fragment {
     }
 
     /**
-     * Handler to send handle the screen bright override timeout.
+     * Handler to handle the screen bright override timeout and deferred code updates.
      * 
      * @see PaymentCodeFragment#resetIdleTimeout()
      */
@@ -555,13 +974,20 @@ public final class PaymentCodeFragment extends Fragment {
         }
 
         public void handleMessage(Message msg) {
+            PaymentCodeFragment fragment = mFragment.get();
+
             switch (msg.what) {
                 case MSG_TURN_OFF_SCREEN_BRIGHT:
-                    PaymentCodeFragment fragment = mFragment.get();
                     if (fragment != null) {
                         fragment.setForceFullBrightness(false);
                     }
                     break;
+                case MSG_SHOW_CODE:
+                    if (fragment != null) {
+                        fragment.showCachedPaymentCode();
+                        fragment.reorderPreCachedCodes();
+                    }
+                    break;
                 default:
                     // Do nothing.
             }
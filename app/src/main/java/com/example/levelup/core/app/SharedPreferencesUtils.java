@@ -41,6 +41,9 @@ public class SharedPreferencesUtils {
 
     /**
      * Log the user out by clearing the access token, payment token, email address, and user ID.
+     * The application-wide code cache is emptied as well, both in memory and on disk, as its codes
+     * contain the payment token. So is the bitmap pool, as its bitmaps still hold the pixels of
+     * those codes.
      * Note: this has the possibility of doing a disk read when the Context's default shared
      * preferences hasn't been loaded yet.
      * 
@@ -51,5 +54,7 @@ public class SharedPreferencesUtils {
         preferences.edit().remove(SharedPreferencesKeys.ACCESS_TOKEN)
                 .remove(SharedPreferencesKeys.PAYMENT_TOKEN).remove(SharedPreferencesKeys.USER_ID)
                 .remove(SharedPreferencesKeys.EMAIL_ADDRESS).apply();
+        LevelUpSampleApplication.getCodeCache(context).clear();
+        LevelUpSampleApplication.getBitmapPool(context).clear();
     }
 }
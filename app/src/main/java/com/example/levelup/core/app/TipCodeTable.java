@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app;
+
+import android.support.annotation.Nullable;
+
+import com.example.levelup.core.app.qr.LruCodeCache;
+import com.scvngr.levelup.core.model.qr.LevelUpCode;
+import com.scvngr.levelup.core.model.tip.PercentageTip;
+
+import java.util.Arrays;
+
+/**
+ * The encoded LevelUp codes for a fixed ladder of tips, in one slot per tip and color. Each code is
+ * encoded the first time it's asked for; after that, looking it up is an array read. Each slot
+ * also holds the code's {@link LruCodeCache#hashKey(String) hash}, so the code cache can be
+ * checked without hashing the code again. All of the slots belong to one payment token and are
+ * cleared together when the token changes.
+ */
+final class TipCodeTable {
+
+    /**
+     * The number of colors a code can have, see
+     * {@link LevelUpCode#encodeLevelUpCode(String, int, com.scvngr.levelup.core.model.tip.Tip)}.
+     */
+    static final int COLOR_COUNT = 10;
+
+    private final int[] mTips;
+
+    /**
+     * The codes, by {@code color * mTips.length + tipIndex}. {@code null} until they're encoded.
+     */
+    private final String[] mCodes;
+
+    /**
+     * The {@link LruCodeCache#hashKey(String) hashes} of {@link #mCodes}, by the same slot.
+     */
+    private final long[] mCodeHashes;
+
+    /**
+     * The payment token the codes were encoded with, or {@code null} if there are none.
+     */
+    @Nullable
+    private String mPaymentToken;
+
+    /**
+     * @param tips the tip ladder, in the order it's displayed.
+     */
+    TipCodeTable(int[] tips) {
+        mTips = tips;
+        mCodes = new String[tips.length * COLOR_COUNT];
+        mCodeHashes = new long[mCodes.length];
+    }
+
+    /**
+     * @param tips a tip ladder.
+     * @return true if this table is for {@code tips}.
+     */
+    boolean isFor(int[] tips) {
+        return tips == mTips;
+    }
+
+    /**
+     * @return the number of tips in the ladder.
+     */
+    int getTipCount() {
+        return mTips.length;
+    }
+
+    /**
+     * @param tip a tip percentage.
+     * @return the index of {@code tip} in the ladder, or -1 if it isn't in it.
+     */
+    int indexOfTip(int tip) {
+        for (int i = 0; i < mTips.length; i++) {
+            if (mTips[i] == tip) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param paymentToken the payment token. If it isn't the one the table holds codes for, the
+     *        table is cleared first.
+     * @param tipIndex the index of the tip in the ladder.
+     * @param color the color index, between 0 and 9 inclusive.
+     * @return the encoded LevelUp code.
+     */
+    String getCode(String paymentToken, int tipIndex, int color) {
+        return mCodes[getSlot(paymentToken, tipIndex, color)];
+    }
+
+    /**
+     * @param paymentToken the payment token. If it isn't the one the table holds codes for, the
+     *        table is cleared first.
+     * @param tipIndex the index of the tip in the ladder.
+     * @param color the color index, between 0 and 9 inclusive.
+     * @return the {@link LruCodeCache#hashKey(String) hash} of the encoded LevelUp code.
+     */
+    long getCodeHash(String paymentToken, int tipIndex, int color) {
+        return mCodeHashes[getSlot(paymentToken, tipIndex, color)];
+    }
+
+    /**
+     * Forgets every code, for example when the payment token is no longer valid.
+     */
+    void clear() {
+        Arrays.fill(mCodes, null);
+        mPaymentToken = null;
+    }
+
+    /**
+     * Encodes the code of a slot and hashes it, if that hasn't been done yet.
+     *
+     * @param paymentToken the payment token. If it isn't the one the table holds codes for, the
+     *        table is cleared first.
+     * @param tipIndex the index of the tip in the ladder.
+     * @param color the color index, between 0 and 9 inclusive.
+     * @return the slot of the code.
+     */
+    private int getSlot(String paymentToken, int tipIndex, int color) {
+        // The token is almost always the very same string, so this rarely compares characters.
+        if (paymentToken != mPaymentToken) {
+            if (!paymentToken.equals(mPaymentToken)) {
+                clear();
+            }
+
+            mPaymentToken = paymentToken;
+        }
+
+        int slot = color * mTips.length + tipIndex;
+
+        if (mCodes[slot] == null) {
+            String code =
+                    LevelUpCode.encodeLevelUpCode(paymentToken, color, new PercentageTip(
+                            mTips[tipIndex]));
+            mCodes[slot] = code;
+            mCodeHashes[slot] = LruCodeCache.hashKey(code);
+        }
+
+        return slot;
+    }
+}
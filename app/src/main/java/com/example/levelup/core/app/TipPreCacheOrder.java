@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app;
+
+/**
+ * Decides the order in which to pre-cache the codes for a ladder of tips. The tips next to the
+ * current one are the ones the user is most likely to land on next, so they come first, working
+ * outward from there. While the user is dragging, the tips ahead of them are favored over the ones
+ * behind.
+ */
+final class TipPreCacheOrder {
+
+    private TipPreCacheOrder() {
+        throw new UnsupportedOperationException("This class is non-instantiable");
+    }
+
+    /**
+     * @param tips the tip ladder, in the order it's displayed.
+     * @param currentTip the tip that's currently displayed.
+     * @return the index of {@code currentTip} in {@code tips}, or of the closest tip if it isn't in
+     *         the ladder. -1 if the ladder is empty.
+     */
+    static int indexOfTip(int[] tips, int currentTip) {
+        int closestIndex = -1;
+        int closestDistance = Integer.MAX_VALUE;
+
+        for (int i = 0; i < tips.length; i++) {
+            int distance = Math.abs(tips[i] - currentTip);
+
+            if (distance < closestDistance) {
+                closestIndex = i;
+                closestDistance = distance;
+            }
+        }
+
+        return closestIndex;
+    }
+
+    /**
+     * Orders the tips around the current one. At each distance from the current tip, the tip in the
+     * direction of travel comes first. When dragging, the tips ahead are reached at twice the rate
+     * of the tips behind: two steps ahead comes before one step behind.
+     *
+     * @param tipCount the number of tips in the ladder.
+     * @param current the index of the tip that's currently displayed. It's not included in the
+     *        result.
+     * @param direction the direction the user last moved through the ladder: positive towards the
+     *        end, negative towards the start, or 0 if unknown.
+     * @return the indexes of the other tips, in the order their codes should be pre-cached.
+     */
+    static int[] getNeighborFirstIndexOrder(int tipCount, int current, int direction) {
+        if (current < 0 || current >= tipCount) {
+            return new int[0];
+        }
+
+        int step = direction < 0 ? -1 : 1;
+        int behindRate = direction == 0 ? 1 : 2;
+        int[] order = new int[tipCount - 1];
+        int count = 0;
+        int ahead = 1;
+        int behind = 1;
+
+        while (count < order.length) {
+            int aheadIndex = current + ahead * step;
+            int behindIndex = current - behind * step;
+            boolean hasAhead = aheadIndex >= 0 && aheadIndex < tipCount;
+            boolean hasBehind = behindIndex >= 0 && behindIndex < tipCount;
+
+            // Ranks: the ahead tip at distance d is d, the behind tip is d * behindRate.
+            if (hasAhead && (!hasBehind || ahead <= behind * behindRate)) {
+                order[count++] = aheadIndex;
+                ahead++;
+            } else if (hasBehind) {
+                order[count++] = behindIndex;
+                behind++;
+            }
+        }
+
+        return order;
+    }
+}
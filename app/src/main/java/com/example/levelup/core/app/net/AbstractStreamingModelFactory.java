@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.net;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * Base class for {@link StreamingModelFactory} implementations that read a model from a single
+ * JSON object. The web service wraps models in an object whose only member is named after the
+ * model's type, such as <code>{"payment_token": {...}}</code>. Like the SDK's tree-based
+ * factories, this reads both the wrapped and the bare model object. The wrapper may be any member
+ * of the object; when it's there, the model is read from it alone.
+ * </p>
+ * <p>
+ * Subclasses read the members they know into a {@link ModelBuilder}, one at a time as they're
+ * streamed. Members they don't know are skipped.
+ * </p>
+ *
+ * @param <T> the type of model.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public abstract class AbstractStreamingModelFactory<T> implements StreamingModelFactory<T> {
+
+    private final String mTypeKey;
+
+    /**
+     * @param typeKey the name of the member that wraps the model in responses.
+     */
+    protected AbstractStreamingModelFactory(String typeKey) {
+        mTypeKey = typeKey;
+    }
+
+    @Override
+    public final T from(JsonReader reader) throws IOException {
+        /*
+         * Whether the object is the bare model or its wrapper isn't known until the wrapper member
+         * is found, so members are read as bare ones until then and dropped if it turns up.
+         */
+        ModelBuilder<T> bareBuilder = newModelBuilder();
+        ModelBuilder<T> wrappedBuilder = null;
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if (wrappedBuilder == null && mTypeKey.equals(name)
+                    && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                wrappedBuilder = newModelBuilder();
+                readMembers(reader, wrappedBuilder);
+            } else if (wrappedBuilder != null || !bareBuilder.readMember(reader, name)) {
+                reader.skipValue();
+            }
+        }
+
+        reader.endObject();
+
+        return (wrappedBuilder != null ? wrappedBuilder : bareBuilder).build();
+    }
+
+    /**
+     * @return a new builder for one model.
+     */
+    protected abstract ModelBuilder<T> newModelBuilder();
+
+    /**
+     * @param name the name of a required member.
+     * @return an exception to report that the member is missing.
+     */
+    protected static MalformedJsonException newMissingMemberException(String name) {
+        return new MalformedJsonException("Missing required member " + name);
+    }
+
+    /**
+     * Reads the model's object.
+     *
+     * @param reader the reader, positioned at the start of the model's object.
+     * @param builder the builder to read the members into.
+     * @throws IOException if the JSON couldn't be read or is malformed.
+     */
+    private static void readMembers(JsonReader reader, ModelBuilder<?> builder)
+            throws IOException {
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            if (!builder.readMember(reader, reader.nextName())) {
+                reader.skipValue();
+            }
+        }
+
+        reader.endObject();
+    }
+
+    /**
+     * Collects the members of one model as they're read.
+     *
+     * @param <T> the type of model.
+     */
+    protected interface ModelBuilder<T> {
+
+        /**
+         * @param reader the reader, positioned at the member's value.
+         * @param name the name of the member.
+         * @return true if the member's value was read, false if it's unknown and must be skipped.
+         * @throws IOException if the JSON couldn't be read or is malformed.
+         */
+        boolean readMember(JsonReader reader, String name) throws IOException;
+
+        /**
+         * @return the model.
+         * @throws IOException if a required member was missing.
+         */
+        T build() throws IOException;
+    }
+}
@@ -71,7 +71,7 @@ public class AccessTokenLoaderCallbacks extends
         Context context = getApplicationContext();
         return new RequestLoader<AccessToken>(context,
                 new AccessTokenRequestFactory(context).buildLoginRequest(email, password),
-                new AccessTokenJsonFactory());
+                new AccessTokenJsonFactory(), new AccessTokenStreamingFactory());
     }
 
     @Override
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.net;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.scvngr.levelup.core.model.AccessToken;
+
+import java.io.IOException;
+
+/**
+ * Streams an {@link AccessToken}, as the
+ * {@link com.scvngr.levelup.core.model.factory.json.AccessTokenJsonFactory} reads it from a tree.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public final class AccessTokenStreamingFactory extends AbstractStreamingModelFactory<AccessToken> {
+
+    private static final String TYPE_KEY = "access_token";
+
+    private static final String KEY_TOKEN = "token";
+
+    private static final String KEY_USER_ID = "user_id";
+
+    public AccessTokenStreamingFactory() {
+        super(TYPE_KEY);
+    }
+
+    @Override
+    protected ModelBuilder<AccessToken> newModelBuilder() {
+        return new ModelBuilder<AccessToken>() {
+            @Nullable
+            private String mToken;
+
+            @Nullable
+            private Long mUserId;
+
+            @Override
+            public boolean readMember(JsonReader reader, String name) throws IOException {
+                if (KEY_TOKEN.equals(name)) {
+                    mToken = reader.nextString();
+                } else if (KEY_USER_ID.equals(name)) {
+                    // The user ID is optional.
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                        mUserId = null;
+                    } else {
+                        mUserId = reader.nextLong();
+                    }
+                } else {
+                    return false;
+                }
+
+                return true;
+            }
+
+            @Override
+            public AccessToken build() throws IOException {
+                if (mToken == null) {
+                    throw newMissingMemberException(KEY_TOKEN);
+                }
+
+                return new AccessToken(mToken, mUserId);
+            }
+        };
+    }
+}
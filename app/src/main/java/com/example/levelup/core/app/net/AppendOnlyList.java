@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.net;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * <p>
+ * A list that one thread appends to while other threads read fixed-size prefixes of it, without
+ * copying. Items are stored in fixed-size chunks that never move once allocated, so adding an item
+ * never disturbs a reader.
+ * </p>
+ * <p>
+ * Only one thread may call {@link #add(Object)}. A prefix from {@link #prefix(int)} may be read
+ * on any thread that the prefix was safely handed to, such as through a
+ * {@link android.os.Handler}.
+ * </p>
+ *
+ * @param <E> the type of item.
+ */
+final class AppendOnlyList<E> {
+
+    /**
+     * The number of items in each chunk.
+     */
+    private static final int CHUNK_SIZE = 64;
+
+    /**
+     * The chunks. When a chunk is added, this is replaced with a longer copy, so a reader always
+     * sees every chunk of the prefixes it was handed.
+     */
+    private volatile Object[][] mChunks = new Object[0][];
+
+    /**
+     * Only accessed by the appending thread.
+     */
+    private int mSize;
+
+    /**
+     * Appends an item. Must only be called from the appending thread.
+     *
+     * @param item the item.
+     */
+    void add(E item) {
+        Object[][] chunks = mChunks;
+        int chunkIndex = mSize / CHUNK_SIZE;
+
+        if (chunkIndex == chunks.length) {
+            Object[][] newChunks = new Object[chunks.length + 1][];
+            System.arraycopy(chunks, 0, newChunks, 0, chunks.length);
+            newChunks[chunkIndex] = new Object[CHUNK_SIZE];
+            chunks = newChunks;
+            mChunks = newChunks;
+        }
+
+        chunks[chunkIndex][mSize % CHUNK_SIZE] = item;
+        mSize++;
+    }
+
+    /**
+     * Must only be called from the appending thread.
+     *
+     * @return the number of items added so far.
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Must only be called from the appending thread.
+     *
+     * @param size the number of items, at most {@link #size()}.
+     * @return a read-only view of the first {@code size} items, which doesn't change as more
+     *         items are added.
+     */
+    List<E> prefix(int size) {
+        if (size < 0 || size > mSize) {
+            throw new IndexOutOfBoundsException("size " + size + " of " + mSize);
+        }
+
+        return new Prefix(size);
+    }
+
+    /**
+     * A read-only view of the first items.
+     */
+    private final class Prefix extends AbstractList<E> implements RandomAccess {
+        private final int mPrefixSize;
+
+        /**
+         * @param size the number of items in the view.
+         */
+        public Prefix(int size) {
+            mPrefixSize = size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int location) {
+            if (location < 0 || location >= mPrefixSize) {
+                throw new IndexOutOfBoundsException("location " + location + " of "
+                        + mPrefixSize);
+            }
+
+            return (E) mChunks[location / CHUNK_SIZE][location % CHUNK_SIZE];
+        }
+
+        @Override
+        public int size() {
+            return mPrefixSize;
+        }
+    }
+}
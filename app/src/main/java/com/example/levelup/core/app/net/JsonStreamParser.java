@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.net;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Parcelable;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import com.scvngr.levelup.core.model.factory.json.AbstractJsonModelFactory;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Parses web service responses with a {@link JsonReader} instead of building an {@code org.json}
+ * tree of the whole response.
+ * </p>
+ * <p>
+ * Arrays are read one element at a time. Each element is handed to a tree-based
+ * {@link AbstractJsonModelFactory} as a small {@link JSONObject} of its own, so only one element's
+ * tree is alive at once, no matter how long the array is.
+ * </p>
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+final class JsonStreamParser {
+
+    private JsonStreamParser() {
+        throw new UnsupportedOperationException("This class is non-instantiable");
+    }
+
+    /**
+     * @param data the response body.
+     * @param factory the factory to build the model with.
+     * @param <T> the type of model.
+     * @return the model.
+     * @throws IOException if the JSON is malformed or doesn't have the structure of the model.
+     */
+    static <T> T readModel(String data, StreamingModelFactory<T> factory) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(data));
+
+        try {
+            T model = factory.from(reader);
+            checkEndOfDocument(reader);
+
+            return model;
+        } catch (IllegalStateException e) {
+            throw newMalformedJsonException(e);
+        } catch (NumberFormatException e) {
+            throw newMalformedJsonException(e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @param data the response body, which must be a JSON array of objects.
+     * @param factory the factory to build each element's model with.
+     * @param <T> the type of model.
+     * @return the models, in the order of the array.
+     * @throws IOException if the JSON is malformed or isn't an array of objects.
+     * @throws JSONException if {@code factory} couldn't build the model of an element.
+     */
+    static <T extends Parcelable> List<T> readList(String data, AbstractJsonModelFactory<T> factory)
+            throws IOException, JSONException {
+        final List<T> models = new ArrayList<T>();
+
+        readList(data, factory, new OnElementReadListener<T>() {
+            @Override
+            public void onElementRead(T model) {
+                models.add(model);
+            }
+        });
+
+        return models;
+    }
+
+    /**
+     * Reads an array, handing each element's model to {@code listener} as soon as it's built.
+     *
+     * @param data the response body, which must be a JSON array of objects.
+     * @param factory the factory to build each element's model with.
+     * @param listener the listener to notify of each model, in the order of the array.
+     * @param <T> the type of model.
+     * @throws IOException if the JSON is malformed or isn't an array of objects.
+     * @throws JSONException if {@code factory} couldn't build the model of an element.
+     */
+    static <T extends Parcelable> void readList(String data, AbstractJsonModelFactory<T> factory,
+            OnElementReadListener<? super T> listener) throws IOException, JSONException {
+        JsonReader reader = new JsonReader(new StringReader(data));
+
+        try {
+            reader.beginArray();
+
+            while (reader.hasNext()) {
+                listener.onElementRead(factory.from(readObject(reader)));
+            }
+
+            reader.endArray();
+            checkEndOfDocument(reader);
+        } catch (IllegalStateException e) {
+            throw newMalformedJsonException(e);
+        } catch (NumberFormatException e) {
+            throw newMalformedJsonException(e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the next value, which must be an object, into a tree.
+     *
+     * @param reader the reader.
+     * @return the object.
+     * @throws IOException if the JSON couldn't be read or is malformed.
+     * @throws JSONException if the object couldn't be built.
+     */
+    static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject object = new JSONObject();
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            object.put(reader.nextName(), readValue(reader));
+        }
+
+        reader.endObject();
+
+        return object;
+    }
+
+    /**
+     * Reads the next value into a tree. Values get the same types that {@link JSONObject} would
+     * give them when parsing text, so factories read them the same way.
+     *
+     * @param reader the reader.
+     * @return the value.
+     * @throws IOException if the JSON couldn't be read or is malformed.
+     * @throws JSONException if the value couldn't be built.
+     */
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+
+                reader.beginArray();
+
+                while (reader.hasNext()) {
+                    array.put(readValue(reader));
+                }
+
+                reader.endArray();
+
+                return array;
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                return toNumber(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+
+                return JSONObject.NULL;
+            default:
+                throw new MalformedJsonException("Unexpected " + reader.peek());
+        }
+    }
+
+    /**
+     * @param literal a JSON number literal.
+     * @return the number as an {@link Integer} or a {@link Long} if it's integral and fits,
+     *         otherwise as a {@link Double}. This matches {@link org.json.JSONTokener}.
+     */
+    private static Object toNumber(String literal) {
+        if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1
+                && literal.indexOf('E') == -1) {
+            try {
+                long longValue = Long.parseLong(literal);
+
+                if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                    return (int) longValue;
+                }
+
+                return longValue;
+            } catch (NumberFormatException e) {
+                // Too large for a long; fall through to a double.
+            }
+        }
+
+        return Double.valueOf(literal);
+    }
+
+    /**
+     * @param reader a reader that has read a whole value.
+     * @throws IOException if there's anything after the value.
+     */
+    private static void checkEndOfDocument(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new MalformedJsonException("Unexpected content after the value");
+        }
+    }
+
+    /**
+     * @param e the exception {@link JsonReader} threw because the JSON didn't have the expected
+     *        structure, or because a value wasn't a number of the requested type.
+     * @return an exception to report it as malformed JSON.
+     */
+    private static MalformedJsonException newMalformedJsonException(RuntimeException e) {
+        MalformedJsonException exception = new MalformedJsonException(e.getMessage());
+        exception.initCause(e);
+
+        return exception;
+    }
+
+    /**
+     * Receives the models of an array as they're read.
+     *
+     * @param <T> the type of model.
+     */
+    interface OnElementReadListener<T> {
+
+        /**
+         * @param model the model of the next element.
+         */
+        void onElementRead(T model);
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.net;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcelable;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.support.v4.content.AsyncTaskLoader;
+import android.text.TextUtils;
+
+import com.example.levelup.core.app.Constants;
+import com.example.levelup.core.app.net.ListRequestLoader.ListResult;
+import com.scvngr.levelup.core.model.Error;
+import com.scvngr.levelup.core.model.factory.json.AbstractJsonModelFactory;
+import com.scvngr.levelup.core.net.AbstractRequest;
+import com.scvngr.levelup.core.net.LevelUpConnection;
+import com.scvngr.levelup.core.net.LevelUpResponse;
+import com.scvngr.levelup.core.net.LevelUpStatus;
+import com.scvngr.levelup.core.util.LogManager;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * <p>
+ * A loader that makes network requests to endpoints that return JSON arrays of LevelUp Web Service
+ * objects, such as a user's credit cards, including collections that are split into pages.
+ * </p>
+ * <p>
+ * Items are delivered as they arrive rather than once the whole list has loaded: a partial
+ * {@link ListResult} is delivered after every page, and, on API 11 and up where pages are parsed
+ * as a stream, after every {@value #DELIVERY_CHUNK_SIZE} items within a page. Each result holds
+ * every item loaded so far, so the UI can simply show the latest one. The items aren't copied for
+ * each result: they're read-only views of a list that only grows, so delivering a chunk costs the
+ * same no matter how many items came before it. The last result delivered for a load is
+ * {@link ListResult#isComplete() complete}.
+ * </p>
+ * <p>
+ * Pages are requested one after another until the {@link PageRequestFactory} has no more, a page
+ * is empty, or a request fails.
+ * </p>
+ *
+ * @param <T> the type of model to load.
+ */
+public class ListRequestLoader<T extends Parcelable> extends AsyncTaskLoader<ListResult<T>> {
+
+    /**
+     * The number of items parsed between partial results, within a page.
+     */
+    private static final int DELIVERY_CHUNK_SIZE = 20;
+
+    private final PageRequestFactory mPageRequestFactory;
+    private final AbstractJsonModelFactory<T> mModelFactory;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Changed whenever a load starts or the loader is reset, so that partial results still queued
+     * from an earlier load are dropped. Only written on the main thread.
+     */
+    private volatile int mLoadGeneration;
+
+    private ListResult<T> mResult;
+
+    /**
+     * Create a new loader to load an endpoint that returns a single array.
+     *
+     * @param context application context.
+     * @param request the request to load.
+     * @param modelFactory the model factory to use to process each element of the array.
+     */
+    public ListRequestLoader(Context context, final AbstractRequest request,
+            AbstractJsonModelFactory<T> modelFactory) {
+        this(context, new PageRequestFactory() {
+            @Override
+            @Nullable
+            public AbstractRequest newPageRequest(int pageIndex,
+                    @Nullable LevelUpResponse previousResponse) {
+                return pageIndex == 0 ? request : null;
+            }
+        }, modelFactory);
+    }
+
+    /**
+     * Create a new loader to load a paginated collection.
+     *
+     * @param context application context.
+     * @param pageRequestFactory the factory of the requests for each page.
+     * @param modelFactory the model factory to use to process each element of the pages.
+     */
+    public ListRequestLoader(Context context, PageRequestFactory pageRequestFactory,
+            AbstractJsonModelFactory<T> modelFactory) {
+        super(context);
+        mPageRequestFactory = pageRequestFactory;
+        mModelFactory = modelFactory;
+    }
+
+    @Override
+    public ListResult<T> loadInBackground() {
+        int generation = mLoadGeneration;
+        LevelUpConnection connection = LevelUpConnection.newInstance(getContext());
+        PageCollector collector = new PageCollector(generation);
+        LevelUpResponse response = null;
+        List<Error> errors = null;
+
+        // Stop early if another load has started in the meantime.
+        while (generation == mLoadGeneration) {
+            AbstractRequest request =
+                    mPageRequestFactory.newPageRequest(collector.mPageCount, response);
+
+            if (request == null) {
+                break;
+            }
+
+            LogManager.v("Sending request %s...", request);
+            response = connection.send(request);
+
+            // A helpful delay for debugging. See Constants.
+            if (Constants.ASYNC_BACKGROUND_TASK_DELAY_ENABLED) {
+                SystemClock.sleep(Constants.ASYNC_BACKGROUND_TASK_DELAY_MS);
+            }
+
+            LogManager.v("Got response %s", response);
+
+            String data = response.getData();
+            int itemCount = collector.mItems.size();
+            collector.mResponse = response;
+            collector.mPageCount++;
+
+            try {
+                if (!response.getStatus().equals(LevelUpStatus.OK)) {
+                    if (!TextUtils.isEmpty(data.trim())) {
+                        errors = RequestLoader.parseErrors(data);
+                    }
+
+                    break;
+                }
+
+                LogManager.v("Parsing page %d...", collector.mPageCount);
+                parsePage(data, collector);
+            } catch (JSONException e) {
+                response = RequestLoader.getParseErrorResponse(response, e);
+                break;
+            } catch (IOException e) {
+                // The streaming parser reports malformed JSON this way.
+                response = RequestLoader.getParseErrorResponse(response, e);
+                break;
+            }
+
+            if (collector.mItems.size() == itemCount) {
+                // An empty page is the end of the collection.
+                break;
+            }
+
+            collector.postPartialResult();
+        }
+
+        return new ListResult<T>(response, collector.mItems.prefix(collector.mItems.size()),
+                errors, collector.mPageCount, true);
+    }
+
+    @Override
+    public void deliverResult(ListResult<T> data) {
+        mResult = data;
+
+        if (isStarted() && !isAbandoned()) {
+            super.deliverResult(data);
+        }
+    }
+
+    @Override
+    protected void onForceLoad() {
+        mLoadGeneration++;
+
+        super.onForceLoad();
+    }
+
+    @Override
+    public boolean cancelLoad() {
+        boolean isCancelled = super.cancelLoad();
+
+        // A cancelled load won't finish its partial result, so it mustn't be redelivered.
+        mLoadGeneration++;
+
+        if (mResult != null && !mResult.isComplete()) {
+            mResult = null;
+        }
+
+        return isCancelled;
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+
+        mLoadGeneration++;
+        mResult = null;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        /*
+         * When starting the loader, if there's a result already, deliver it instead of loading it
+         * again from the network. A partial result means a load is still running; it'll deliver
+         * the rest. Cancelling a load drops its partial result.
+         */
+        if (mResult != null) {
+            deliverResult(mResult);
+        } else {
+            forceLoad();
+        }
+    }
+
+    /**
+     * Parses a page into the collector, streaming it where possible.
+     *
+     * @param data the body of the page's response.
+     * @param collector the collector of the load.
+     * @throws JSONException if an element couldn't be parsed.
+     * @throws IOException if the streaming parser found malformed JSON.
+     */
+    private void parsePage(String data, PageCollector collector) throws JSONException,
+            IOException {
+        if (RequestLoader.IS_STREAMING_SUPPORTED) {
+            JsonStreamParser.readList(data, mModelFactory, collector);
+        } else {
+            for (T model : mModelFactory.fromList(new JSONArray(data))) {
+                collector.mItems.add(model);
+            }
+        }
+    }
+
+    /**
+     * The items of a load, gathered on the background thread, and the partial results posted to
+     * the main thread as they grow.
+     */
+    private final class PageCollector implements JsonStreamParser.OnElementReadListener<T> {
+        private final int mGeneration;
+        private final AppendOnlyList<T> mItems = new AppendOnlyList<T>();
+        private LevelUpResponse mResponse;
+        private int mPageCount;
+
+        /**
+         * The number of items in the last partial result posted.
+         */
+        private int mPostedItemCount;
+
+        /**
+         * @param generation the {@link ListRequestLoader#mLoadGeneration} of the load.
+         */
+        public PageCollector(int generation) {
+            mGeneration = generation;
+        }
+
+        @Override
+        public void onElementRead(T model) {
+            mItems.add(model);
+
+            if (mItems.size() - mPostedItemCount >= DELIVERY_CHUNK_SIZE) {
+                postPartialResult();
+            }
+        }
+
+        /**
+         * Posts the items so far to the main thread, unless they've all been posted already.
+         */
+        public void postPartialResult() {
+            if (mItems.size() == mPostedItemCount) {
+                return;
+            }
+
+            mPostedItemCount = mItems.size();
+
+            final ListResult<T> result =
+                    new ListResult<T>(mResponse, mItems.prefix(mPostedItemCount), null,
+                            mPageCount, false);
+
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    // The load may have been superseded while this was queued.
+                    if (mGeneration == mLoadGeneration && !isReset()) {
+                        deliverResult(result);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * The items loaded so far and the response of the last page. If the load is
+     * {@link #isComplete() complete} and {@link #getResponse()} isn't OK, {@link #getErrors()}
+     * should be checked.
+     *
+     * @param <T2> the type of model to return.
+     */
+    public static final class ListResult<T2 extends Parcelable> {
+        @Nullable
+        private final LevelUpResponse mResponse;
+        private final List<T2> mItems;
+        @Nullable
+        private final List<Error> mErrors;
+        private final int mPageCount;
+        private final boolean mIsComplete;
+
+        /**
+         * @param response the network response of the last page loaded, or {@code null} if there
+         *        were no pages to load.
+         * @param items the items loaded so far.
+         * @param errors an optional list of errors generated by web service.
+         * @param pageCount the number of pages requested so far.
+         * @param isComplete true if this is the last result of the load.
+         */
+        public ListResult(@Nullable LevelUpResponse response, List<T2> items,
+                @Nullable List<Error> errors, int pageCount, boolean isComplete) {
+            mResponse = response;
+            mItems = items;
+            mErrors = errors;
+            mPageCount = pageCount;
+            mIsComplete = isComplete;
+        }
+
+        /**
+         * @return the network response of the last page loaded, or {@code null} if there were no
+         *         pages to load.
+         */
+        @Nullable
+        public LevelUpResponse getResponse() {
+            return mResponse;
+        }
+
+        /**
+         * @return the items loaded so far, in order. The list is read-only, and doesn't change as
+         *         more items are loaded.
+         */
+        public List<T2> getItems() {
+            return mItems;
+        }
+
+        /**
+         * @return one or more errors from the web service, or null if no request failed.
+         */
+        @Nullable
+        public List<Error> getErrors() {
+            return mErrors;
+        }
+
+        /**
+         * @return the number of pages requested so far.
+         */
+        public int getPageCount() {
+            return mPageCount;
+        }
+
+        /**
+         * @return true if the load has finished, false if more items are on their way.
+         */
+        public boolean isComplete() {
+            return mIsComplete;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.net;
+
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.net.AbstractRequest;
+import com.scvngr.levelup.core.net.LevelUpResponse;
+
+/**
+ * Creates the requests for the pages of a paginated collection, for {@link ListRequestLoader}.
+ */
+public interface PageRequestFactory {
+
+    /**
+     * @param pageIndex the index of the page, starting at 0.
+     * @param previousResponse the response for the previous page, or {@code null} for the first
+     *        page. Endpoints that link to the next page in their responses can follow the link.
+     * @return the request for the page, or {@code null} if there are no more pages.
+     */
+    @Nullable
+    AbstractRequest newPageRequest(int pageIndex, @Nullable LevelUpResponse previousResponse);
+}
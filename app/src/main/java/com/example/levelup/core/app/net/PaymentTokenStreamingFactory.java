@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.net;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.util.JsonReader;
+
+import com.scvngr.levelup.core.model.PaymentToken;
+
+import java.io.IOException;
+
+/**
+ * Streams a {@link PaymentToken}, as the
+ * {@link com.scvngr.levelup.core.model.factory.json.PaymentTokenJsonFactory} reads it from a tree.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public final class PaymentTokenStreamingFactory extends
+        AbstractStreamingModelFactory<PaymentToken> {
+
+    private static final String TYPE_KEY = "payment_token";
+
+    private static final String KEY_DATA = "data";
+
+    private static final String KEY_ID = "id";
+
+    public PaymentTokenStreamingFactory() {
+        super(TYPE_KEY);
+    }
+
+    @Override
+    protected ModelBuilder<PaymentToken> newModelBuilder() {
+        return new ModelBuilder<PaymentToken>() {
+            @Nullable
+            private String mData;
+
+            @Nullable
+            private Long mId;
+
+            @Override
+            public boolean readMember(JsonReader reader, String name) throws IOException {
+                if (KEY_DATA.equals(name)) {
+                    mData = reader.nextString();
+                } else if (KEY_ID.equals(name)) {
+                    mId = reader.nextLong();
+                } else {
+                    return false;
+                }
+
+                return true;
+            }
+
+            @Override
+            public PaymentToken build() throws IOException {
+                if (mData == null) {
+                    throw newMissingMemberException(KEY_DATA);
+                }
+
+                if (mId == null) {
+                    throw newMissingMemberException(KEY_ID);
+                }
+
+                return new PaymentToken(mData, mId);
+            }
+        };
+    }
+}
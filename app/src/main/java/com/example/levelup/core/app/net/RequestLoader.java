@@ -14,8 +14,10 @@
 package com.example.levelup.core.app.net;
 
 import android.content.Context;
+import android.os.Build;
 import android.os.Parcelable;
 import android.os.SystemClock;
+import android.support.annotation.Nullable;
 import android.support.v4.content.AsyncTaskLoader;
 import android.text.TextUtils;
 
@@ -34,6 +36,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -43,16 +46,32 @@ import java.util.List;
  * {@link com.scvngr.levelup.core.model.PaymentToken}, etc.).
  * </p>
  * <p>
- * Note: currently this only supports endpoints that return a single object.
+ * On API 11 and up, error responses are parsed as a stream, one error at a time, rather than
+ * building a tree of the whole array first. Models are streamed too when a
+ * {@link StreamingModelFactory} is given; otherwise, and on older devices, they're parsed with the
+ * {@link AbstractJsonModelFactory}.
+ * </p>
+ * <p>
+ * Note: this only supports endpoints that return a single object. Use {@link ListRequestLoader}
+ * for endpoints that return arrays or paginated collections.
  * </p>
  * 
  * @param <T> the type of model to load.
  */
 public class RequestLoader<T extends Parcelable> extends AsyncTaskLoader<RequestResult<T>> {
 
+    /**
+     * True if {@link android.util.JsonReader} is available.
+     */
+    static final boolean IS_STREAMING_SUPPORTED =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+
     private final AbstractRequest mRequest;
     private final AbstractJsonModelFactory<T> mModelFactory;
 
+    @Nullable
+    private final StreamingModelFactory<T> mStreamingModelFactory;
+
     private RequestResult<T> mResult;
 
     /**
@@ -64,9 +83,27 @@ public class RequestLoader<T extends Parcelable> extends AsyncTaskLoader<Request
      */
     public RequestLoader(Context context, AbstractRequest request,
             AbstractJsonModelFactory<T> modelFactory) {
+        this(context, request, modelFactory, null);
+    }
+
+    /**
+     * Create a new loader to load the given {@link AbstractRequest}, streaming the result where
+     * possible.
+     * 
+     * @param context application context.
+     * @param request the request to load.
+     * @param modelFactory the model factory to use to process the result on devices without
+     *        {@link android.util.JsonReader}.
+     * @param streamingModelFactory the model factory to use to process the result on API 11 and
+     *        up, or {@code null} to always use {@code modelFactory}.
+     */
+    public RequestLoader(Context context, AbstractRequest request,
+            AbstractJsonModelFactory<T> modelFactory,
+            @Nullable StreamingModelFactory<T> streamingModelFactory) {
         super(context);
         mRequest = request;
         mModelFactory = modelFactory;
+        mStreamingModelFactory = streamingModelFactory;
     }
 
     @Override
@@ -92,7 +129,7 @@ public class RequestLoader<T extends Parcelable> extends AsyncTaskLoader<Request
         try {
             if (response.getStatus().equals(LevelUpStatus.OK)) {
                 LogManager.v("Parsing response...");
-                result = mModelFactory.from(new JSONObject(data));
+                result = parseModel(data);
             } else {
                 /*
                  * The LevelUp web service returns JSON arrays of errors in its responses. In a
@@ -100,20 +137,63 @@ public class RequestLoader<T extends Parcelable> extends AsyncTaskLoader<Request
                  * before attempting to parse it as JSON.
                  */
                 if (!TextUtils.isEmpty(data.trim())) {
-                    errors = new ErrorJsonFactory().fromList(new JSONArray(data));
+                    errors = parseErrors(data);
                 }
             }
         } catch (JSONException e) {
-            // Don't mask other errors with a parsing error.
-            if (response.getStatus().equals(LevelUpStatus.OK)) {
-                LogManager.e("JSONException while parsing model", e);
-                response = new LevelUpResponse(data, LevelUpStatus.ERROR_PARSING);
-            }
+            response = getParseErrorResponse(response, e);
+        } catch (IOException e) {
+            // The streaming parser reports malformed JSON this way.
+            response = getParseErrorResponse(response, e);
         }
 
         return new RequestResult<T>(response, result, errors);
     }
 
+    /**
+     * @param data the body of a successful response.
+     * @return the model.
+     * @throws JSONException if the tree-based factory couldn't parse the model.
+     * @throws IOException if the streaming factory couldn't parse the model.
+     */
+    private T parseModel(String data) throws JSONException, IOException {
+        if (IS_STREAMING_SUPPORTED && mStreamingModelFactory != null) {
+            return JsonStreamParser.readModel(data, mStreamingModelFactory);
+        }
+
+        return mModelFactory.from(new JSONObject(data));
+    }
+
+    /**
+     * @param data the body of an error response.
+     * @return the errors.
+     * @throws JSONException if an error couldn't be parsed.
+     * @throws IOException if the streaming parser found malformed JSON.
+     */
+    static List<Error> parseErrors(String data) throws JSONException, IOException {
+        if (IS_STREAMING_SUPPORTED) {
+            return JsonStreamParser.readList(data, new ErrorJsonFactory());
+        }
+
+        return new ErrorJsonFactory().fromList(new JSONArray(data));
+    }
+
+    /**
+     * @param response the response that couldn't be parsed.
+     * @param e the parsing error.
+     * @return the response to report.
+     */
+    static LevelUpResponse getParseErrorResponse(LevelUpResponse response, Exception e) {
+        // Don't mask other errors with a parsing error.
+        if (response.getStatus().equals(LevelUpStatus.OK)) {
+            LogManager.e("Exception while parsing model", e);
+
+            return new LevelUpResponse(response.getData(), LevelUpStatus.ERROR_PARSING);
+        }
+
+        return response;
+    }
+
     @Override
     public void deliverResult(RequestResult<T> data) {
         mResult = data;
@@ -13,13 +13,15 @@
  */
 package com.example.levelup.core.app.net;
 
+import com.example.levelup.core.app.net.ListRequestLoader.ListResult;
 import com.example.levelup.core.app.net.RequestLoader.RequestResult;
 import com.scvngr.levelup.core.model.Error;
+import com.scvngr.levelup.core.net.LevelUpResponse;
 
 import java.util.List;
 
 /**
- * Utilities to work with {@link RequestResult}s.
+ * Utilities to work with {@link RequestResult}s and {@link ListResult}s.
  */
 public class RequestResultUtil {
     /**
@@ -27,13 +29,29 @@ public class RequestResultUtil {
      * @return the error messages, if there are any, as a string.
      */
     public static String errorsToString(RequestResult<?> response) {
+        return errorsToString(response.getErrors(), response.getResponse());
+    }
+
+    /**
+     * @param result the complete result of a list load to extract error messages from.
+     * @return the error messages, if there are any, as a string.
+     */
+    public static String errorsToString(ListResult<?> result) {
+        return errorsToString(result.getErrors(), result.getResponse());
+    }
+
+    /**
+     * @param errors the errors from the web service, if any.
+     * @param response the response the errors came with.
+     * @return the error messages, if there are any, as a string.
+     */
+    private static String errorsToString(List<Error> errors, LevelUpResponse response) {
         StringBuilder sb = new StringBuilder();
 
         /*
          * The LevelUp framework returns a list of errors, as it's possible for there to be an error
          * on more than one part of the request. While Login doesn't use this, Register does.
          */
-        List<Error> errors = response.getErrors();
         boolean needsDelim = false;
 
         if (errors != null) {
@@ -45,11 +63,11 @@ public class RequestResultUtil {
                 needsDelim = true;
             }
         } else {
-            Exception error = response.getResponse().getError();
+            Exception error = response.getError();
             if (error != null) {
                 sb.append(error.toString());
             } else {
-                sb.append(response.getResponse().getStatus());
+                sb.append(response.getStatus());
             }
         }
 
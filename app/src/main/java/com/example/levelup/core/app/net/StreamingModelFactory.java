@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.net;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * Builds a model straight from a {@link JsonReader}, without the intermediate {@code org.json}
+ * tree that an {@link com.scvngr.levelup.core.model.factory.json.AbstractJsonModelFactory} needs.
+ * This saves building the whole tree and walking it again, and the tree's memory.
+ * </p>
+ * <p>
+ * {@link JsonReader} was added in API 11, so {@link RequestLoader} only streams on devices that
+ * have it and falls back to the tree-based factory on older ones.
+ * </p>
+ *
+ * @param <T> the type of model.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public interface StreamingModelFactory<T> {
+
+    /**
+     * Reads one model. The reader is positioned at the start of the model's JSON value, and this
+     * must consume that whole value and nothing after it.
+     *
+     * @param reader the reader.
+     * @return the model.
+     * @throws IOException if the JSON couldn't be read or is malformed.
+     * @throws IllegalStateException if the JSON doesn't have the structure of the model.
+     */
+    T from(JsonReader reader) throws IOException;
+}
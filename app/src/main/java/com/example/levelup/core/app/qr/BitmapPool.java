@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.qr;
+
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Locale;
+
+/**
+ * <p>
+ * A bounded pool of mutable bitmaps that are no longer in use, grouped by width, height and config.
+ * The tip and color variants of a payment token almost always have the same dimensions, so a bitmap
+ * given back by one code can be filled with the next instead of allocating another.
+ * </p>
+ * <p>
+ * Bitmaps must only be put in the pool once nothing will draw them again. The pool holds at most a
+ * fixed number of bytes; once it's full, the bitmaps that have been in it the longest are dropped.
+ * This class is thread safe.
+ * </p>
+ * <p>
+ * The application keeps one pool. {@link ZXingCodeGenerator} takes its output bitmaps from it, and
+ * {@link DisplayCodeCache} takes its scaled bitmaps from it and gives them back once they're off
+ * screen, along with the generated bitmaps that were only needed to scale from.
+ * </p>
+ */
+public final class BitmapPool {
+
+    /**
+     * The default size of the pool, in bytes. This fits a couple of full-screen codes, or a great
+     * many one-pixel-per-module ones.
+     */
+    public static final int DEFAULT_MAX_SIZE_BYTES = 2 * 1024 * 1024;
+
+    /**
+     * The pooled bitmaps, by {@link #getKey(int, int, Bitmap.Config)}.
+     */
+    private final HashMap<Long, ArrayList<Bitmap>> mBitmaps =
+            new HashMap<Long, ArrayList<Bitmap>>();
+
+    /**
+     * Every pooled bitmap, oldest first.
+     */
+    private final LinkedList<Bitmap> mBitmapsByAge = new LinkedList<Bitmap>();
+
+    private final int mMaxSizeBytes;
+
+    private int mSizeBytes;
+
+    private int mHitCount;
+
+    private int mMissCount;
+
+    /**
+     * Creates a pool of {@link #DEFAULT_MAX_SIZE_BYTES}.
+     */
+    public BitmapPool() {
+        this(DEFAULT_MAX_SIZE_BYTES);
+    }
+
+    /**
+     * @param maxSizeBytes the maximum number of bytes of bitmaps the pool will hold.
+     */
+    public BitmapPool(int maxSizeBytes) {
+        mMaxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Takes a bitmap out of the pool.
+     *
+     * @param width the width of the bitmap.
+     * @param height the height of the bitmap.
+     * @param config the config of the bitmap.
+     * @return a mutable bitmap whose pixels are undefined, or {@code null} if there's none of that
+     *         size in the pool.
+     */
+    @Nullable
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        ArrayList<Bitmap> bitmaps = mBitmaps.get(getKey(width, height, config));
+
+        if (bitmaps == null || bitmaps.isEmpty()) {
+            mMissCount++;
+
+            return null;
+        }
+
+        Bitmap bitmap = bitmaps.remove(bitmaps.size() - 1);
+        mBitmapsByAge.remove(bitmap);
+        mSizeBytes -= getByteCount(bitmap);
+        mHitCount++;
+
+        return bitmap;
+    }
+
+    /**
+     * Takes a bitmap out of the pool, or creates one if there's none of that size.
+     *
+     * @param width the width of the bitmap.
+     * @param height the height of the bitmap.
+     * @param config the config of the bitmap.
+     * @return a mutable bitmap whose pixels are undefined.
+     */
+    public Bitmap getOrCreate(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = get(width, height, config);
+
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, config);
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Gives a bitmap back to the pool. Immutable and recycled bitmaps are ignored, as are bitmaps
+     * that are larger than the whole pool.
+     *
+     * @param bitmap the bitmap. It must not be used again by the caller.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (!bitmap.isMutable() || bitmap.isRecycled() || bitmap.getConfig() == null) {
+            return;
+        }
+
+        int byteCount = getByteCount(bitmap);
+
+        if (byteCount > mMaxSizeBytes || mBitmapsByAge.contains(bitmap)) {
+            return;
+        }
+
+        Long key = getKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayList<Bitmap> bitmaps = mBitmaps.get(key);
+
+        if (bitmaps == null) {
+            bitmaps = new ArrayList<Bitmap>(2);
+            mBitmaps.put(key, bitmaps);
+        }
+
+        bitmaps.add(bitmap);
+        mBitmapsByAge.addLast(bitmap);
+        mSizeBytes += byteCount;
+
+        trimToSize(mMaxSizeBytes);
+    }
+
+    /**
+     * Drops the oldest bitmaps until the pool is no larger than {@code maxSizeBytes}.
+     *
+     * @param maxSizeBytes the size to trim to, in bytes. Pass 0 to empty the pool.
+     */
+    public synchronized void trimToSize(int maxSizeBytes) {
+        while (mSizeBytes > maxSizeBytes && !mBitmapsByAge.isEmpty()) {
+            Bitmap bitmap = mBitmapsByAge.removeFirst();
+            Long key = getKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            ArrayList<Bitmap> bitmaps = mBitmaps.get(key);
+
+            bitmaps.remove(bitmap);
+
+            if (bitmaps.isEmpty()) {
+                mBitmaps.remove(key);
+            }
+
+            mSizeBytes -= getByteCount(bitmap);
+        }
+    }
+
+    /**
+     * Drops every bitmap in the pool.
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * @return the number of bytes currently held by the pool.
+     */
+    public synchronized int getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    /**
+     * @return the maximum number of bytes the pool will hold.
+     */
+    public synchronized int getMaxSizeBytes() {
+        return mMaxSizeBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "BitmapPool[size=%d, maxSize=%d, hits=%d, misses=%d]",
+                mSizeBytes, mMaxSizeBytes, mHitCount, mMissCount);
+    }
+
+    /**
+     * @param width the width of a bitmap.
+     * @param height the height of a bitmap.
+     * @param config the config of a bitmap.
+     * @return the key of the group of bitmaps with those dimensions and config.
+     */
+    private static Long getKey(int width, int height, Bitmap.Config config) {
+        return Long.valueOf(((long) width << 32) | ((long) height << 8) | config.ordinal());
+    }
+
+    /**
+     * @param bitmap a bitmap.
+     * @return the number of bytes the bitmap's pixels take.
+     */
+    private static int getByteCount(Bitmap bitmap) {
+        // Bitmap#getByteCount() needs API 12.
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
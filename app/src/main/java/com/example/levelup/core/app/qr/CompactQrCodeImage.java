@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.qr;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import com.scvngr.levelup.core.ui.view.LevelUpQrCodeGenerator.LevelUpQrCodeImage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A bit-packed copy of a {@link LevelUpQrCodeImage}, for keeping codes in memory. Only the modules
+ * inside the margin are stored, one bit per module, along with the target and margin sizes. An
+ * image of a typical LevelUp code takes a few hundred bytes this way, compared to a few kilobytes
+ * for its bitmap.
+ * </p>
+ * <p>
+ * Use {@link #fromImage(LevelUpQrCodeImage)} to pack an image and {@link #toImage()} to inflate it
+ * back into a bitmap when it's about to be displayed. Images can also be written to and read from a
+ * stream in the same compact form. Instances are immutable.
+ * </p>
+ */
+public final class CompactQrCodeImage {
+
+    /**
+     * The number of modules expanded at a time by the lookup tables.
+     */
+    private static final int LOOKUP_BITS = 8;
+
+    /**
+     * Pixel colors for every byte of packed modules, {@link #LOOKUP_BITS} entries per byte value.
+     * Bits are stored least significant first.
+     */
+    private static final int[] LOOKUP_RGB = buildLookup(Color.WHITE, Color.BLACK);
+
+    /**
+     * Alpha values for every byte of packed modules, {@link #LOOKUP_BITS} entries per byte value.
+     */
+    private static final byte[] LOOKUP_ALPHA = buildAlphaLookup();
+
+    /**
+     * The largest image dimension accepted by {@link #readFrom(DataInputStream)}. A version 40 QR
+     * code is 177 modules wide, plus its margin.
+     */
+    private static final int MAX_DIMENSION = 512;
+
+    /**
+     * An estimate of the memory used by an instance, not counting its bits.
+     */
+    private static final int OBJECT_OVERHEAD_BYTES = 48;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mTargetSize;
+    private final int mMarginSize;
+    private final boolean mIsAlpha;
+
+    /**
+     * The modules inside the margin, row by row. Each row starts on a new word.
+     */
+    private final int[] mBits;
+
+    private CompactQrCodeImage(int width, int height, int targetSize, int marginSize,
+            boolean isAlpha, int[] bits) {
+        mWidth = width;
+        mHeight = height;
+        mTargetSize = targetSize;
+        mMarginSize = marginSize;
+        mIsAlpha = isAlpha;
+        mBits = bits;
+    }
+
+    /**
+     * Packs an image generated by a {@link com.scvngr.levelup.core.ui.view.LevelUpQrCodeGenerator}.
+     * The bitmap must have one pixel per module, with dark modules either black or opaque (for
+     * {@link Bitmap.Config#ALPHA_8} bitmaps).
+     * 
+     * @param image the image to pack.
+     * @return the packed image.
+     */
+    public static CompactQrCodeImage fromImage(LevelUpQrCodeImage image) {
+        Bitmap bitmap = image.getBitmap();
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int margin = image.getMarginSize();
+        int modulesWide = width - margin * 2;
+        int modulesHigh = height - margin * 2;
+        int wordsPerRow = getWordsPerRow(modulesWide);
+        int[] bits = new int[wordsPerRow * modulesHigh];
+        int[] row = new int[modulesWide];
+
+        for (int y = 0; y < modulesHigh; y++) {
+            bitmap.getPixels(row, 0, modulesWide, margin, margin + y, modulesWide, 1);
+            int rowStart = y * wordsPerRow;
+
+            for (int x = 0; x < modulesWide; x++) {
+                if (isDark(row[x])) {
+                    bits[rowStart + (x >> 5)] |= 1 << (x & 31);
+                }
+            }
+        }
+
+        return new CompactQrCodeImage(width, height, image.getTargetSize(), margin,
+                bitmap.getConfig() == Bitmap.Config.ALPHA_8, bits);
+    }
+
+    /**
+     * Reads an image written by {@link #writeTo(DataOutputStream)}.
+     * 
+     * @param in the stream to read from.
+     * @return the image.
+     * @throws IOException if the stream couldn't be read or doesn't hold a valid image.
+     */
+    public static CompactQrCodeImage readFrom(DataInputStream in) throws IOException {
+        int width = in.readInt();
+        int height = in.readInt();
+        int targetSize = in.readInt();
+        int marginSize = in.readInt();
+        boolean isAlpha = in.readBoolean();
+
+        if (width <= marginSize * 2 || height <= marginSize * 2 || marginSize < 0
+                || width > MAX_DIMENSION || height > MAX_DIMENSION) {
+            throw new IOException("Invalid image dimensions");
+        }
+
+        int[] bits = new int[getWordsPerRow(width - marginSize * 2) * (height - marginSize * 2)];
+
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = in.readInt();
+        }
+
+        return new CompactQrCodeImage(width, height, targetSize, marginSize, isAlpha, bits);
+    }
+
+    /**
+     * Writes this image to a stream. It can be read back with
+     * {@link #readFrom(DataInputStream)}.
+     * 
+     * @param out the stream to write to.
+     * @throws IOException if the stream couldn't be written to.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(mWidth);
+        out.writeInt(mHeight);
+        out.writeInt(mTargetSize);
+        out.writeInt(mMarginSize);
+        out.writeBoolean(mIsAlpha);
+
+        for (int word : mBits) {
+            out.writeInt(word);
+        }
+    }
+
+    /**
+     * Inflates this into a bitmap of the same config and content as the one it was packed from.
+     * 
+     * @return a new image. The bitmap must not be modified.
+     */
+    public LevelUpQrCodeImage toImage() {
+        Bitmap bitmap;
+
+        if (mIsAlpha) {
+            bitmap = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ALPHA_8);
+            int stride = bitmap.getRowBytes();
+            byte[] pixels = new byte[stride * mHeight];
+
+            inflateAlpha(pixels, stride);
+            bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels));
+        } else {
+            int[] pixels = new int[mWidth * mHeight];
+
+            inflateRgb(pixels);
+            bitmap = Bitmap.createBitmap(pixels, 0, mWidth, mWidth, mHeight, Bitmap.Config.RGB_565);
+        }
+
+        return new LevelUpQrCodeImage(bitmap, mTargetSize, mMarginSize);
+    }
+
+    /**
+     * @return an estimate of the memory this image uses, in bytes.
+     */
+    public int getByteCount() {
+        return OBJECT_OVERHEAD_BYTES + mBits.length * 4;
+    }
+
+    /**
+     * @return the width of the inflated bitmap, in pixels.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * @return the height of the inflated bitmap, in pixels.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Fills {@code pixels} with the image, as RGB colors. Each 32-bit word of modules is expanded a
+     * byte at a time through {@link #LOOKUP_RGB}.
+     * 
+     * @param pixels the destination, {@link #mWidth} &times; {@link #mHeight} long.
+     */
+    private void inflateRgb(int[] pixels) {
+        int modulesWide = mWidth - mMarginSize * 2;
+        int modulesHigh = mHeight - mMarginSize * 2;
+        int wordsPerRow = getWordsPerRow(modulesWide);
+
+        // The whole image starts out white; only the modules need to be written.
+        Arrays.fill(pixels, Color.WHITE);
+
+        for (int y = 0; y < modulesHigh; y++) {
+            int dest = (y + mMarginSize) * mWidth + mMarginSize;
+            int remaining = modulesWide;
+
+            for (int word = y * wordsPerRow; remaining > 0; word++) {
+                int bits = mBits[word];
+
+                for (int shift = 0; shift < 32 && remaining > 0; shift += LOOKUP_BITS) {
+                    int count = Math.min(LOOKUP_BITS, remaining);
+
+                    System.arraycopy(LOOKUP_RGB, ((bits >>> shift) & 0xff) * LOOKUP_BITS, pixels,
+                            dest, count);
+                    dest += count;
+                    remaining -= count;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills {@code pixels} with the image, as alpha values. See {@link #inflateRgb(int[])}.
+     * 
+     * @param pixels the destination, {@code stride} &times; {@link #mHeight} long.
+     * @param stride the number of bytes between the start of each row.
+     */
+    private void inflateAlpha(byte[] pixels, int stride) {
+        int modulesWide = mWidth - mMarginSize * 2;
+        int modulesHigh = mHeight - mMarginSize * 2;
+        int wordsPerRow = getWordsPerRow(modulesWide);
+
+        for (int y = 0; y < modulesHigh; y++) {
+            int dest = (y + mMarginSize) * stride + mMarginSize;
+            int remaining = modulesWide;
+
+            for (int word = y * wordsPerRow; remaining > 0; word++) {
+                int bits = mBits[word];
+
+                for (int shift = 0; shift < 32 && remaining > 0; shift += LOOKUP_BITS) {
+                    int count = Math.min(LOOKUP_BITS, remaining);
+
+                    System.arraycopy(LOOKUP_ALPHA, ((bits >>> shift) & 0xff) * LOOKUP_BITS,
+                            pixels, dest, count);
+                    dest += count;
+                    remaining -= count;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param color a pixel color, as returned by {@link Bitmap#getPixels}.
+     * @return true if the pixel is a dark module. This works for both black-on-white and
+     *         {@link Bitmap.Config#ALPHA_8} bitmaps.
+     */
+    private static boolean isDark(int color) {
+        return Color.alpha(color) >= 0x80 && Color.green(color) < 0x80;
+    }
+
+    /**
+     * @param modulesWide the number of modules in a row.
+     * @return the number of words needed to store a row.
+     */
+    private static int getWordsPerRow(int modulesWide) {
+        return (modulesWide + 31) >> 5;
+    }
+
+    /**
+     * @param offColor the color for a 0 bit.
+     * @param onColor the color for a 1 bit.
+     * @return the lookup table.
+     */
+    private static int[] buildLookup(int offColor, int onColor) {
+        int[] lookup = new int[256 * LOOKUP_BITS];
+
+        for (int value = 0; value < 256; value++) {
+            for (int bit = 0; bit < LOOKUP_BITS; bit++) {
+                lookup[value * LOOKUP_BITS + bit] = ((value >> bit) & 1) != 0 ? onColor : offColor;
+            }
+        }
+
+        return lookup;
+    }
+
+    /**
+     * @return the lookup table for {@link Bitmap.Config#ALPHA_8} output.
+     */
+    private static byte[] buildAlphaLookup() {
+        byte[] lookup = new byte[256 * LOOKUP_BITS];
+
+        for (int value = 0; value < 256; value++) {
+            for (int bit = 0; bit < LOOKUP_BITS; bit++) {
+                lookup[value * LOOKUP_BITS + bit] = ((value >> bit) & 1) != 0 ? (byte) 0xff : 0;
+            }
+        }
+
+        return lookup;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.qr;
+
+import android.os.Process;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.util.LogManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>
+ * A small on-disk store of {@link CompactQrCodeImage}s, keyed by the encoded LevelUp code string.
+ * Each code is stored in its own file of a few hundred bytes, so reading one back is fast enough to
+ * do on the main thread while the first frame is being drawn.
+ * </p>
+ * <p>
+ * Writes and deletions happen on a background thread. The store keeps at most a fixed number of
+ * codes, deleting the least recently used files beyond that. This class is thread safe.
+ * </p>
+ */
+public final class DiskCodeCache {
+
+    /**
+     * The default number of codes to keep on disk. This covers the tip ladder for a couple of
+     * colors, which is all that's needed to show the last code on the next launch.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+
+    /**
+     * Written at the start of each file, so that files from an incompatible version are ignored.
+     */
+    private static final int FILE_MAGIC = 0x4c555131; // "LUQ1"
+
+    private static final String FILE_SUFFIX = ".code";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /**
+     * Accepts the finished code files.
+     */
+    private static final FileFilter CODE_FILE_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File file) {
+            return file.getName().endsWith(FILE_SUFFIX);
+        }
+    };
+
+    /**
+     * Orders files from the least recently used to the most recently used.
+     */
+    private static final Comparator<File> LEAST_RECENTLY_USED_FIRST = new Comparator<File>() {
+        @Override
+        public int compare(File lhs, File rhs) {
+            long lhsModified = lhs.lastModified();
+            long rhsModified = rhs.lastModified();
+
+            return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+        }
+    };
+
+    private final File mDirectory;
+    private final int mMaxEntries;
+    private final Executor mWriteExecutor;
+
+    /**
+     * @param directory the directory to store the codes in. It's created if needed, and nothing
+     *        else should be stored in it.
+     * @param maxEntries the maximum number of codes to keep.
+     */
+    public DiskCodeCache(File directory, int maxEntries) {
+        mDirectory = directory;
+        mMaxEntries = maxEntries;
+        mWriteExecutor = newWriteExecutor();
+    }
+
+    /**
+     * Reads a code from disk. This does a small amount of disk I/O on the calling thread.
+     * 
+     * @param key the encoded LevelUp code.
+     * @return the code or {@code null} if it isn't stored or couldn't be read.
+     */
+    @Nullable
+    public CompactQrCodeImage get(String key) {
+        File file = getFile(key);
+        CompactQrCodeImage image = null;
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            // Different keys can share a file name, so the full key is checked as well.
+            if (in.readInt() == FILE_MAGIC && key.equals(in.readUTF())) {
+                image = CompactQrCodeImage.readFrom(in);
+            }
+        } catch (FileNotFoundException e) {
+            // Not cached.
+        } catch (IOException e) {
+            LogManager.w("Could not read cached code %s", file);
+        } finally {
+            closeQuietly(in);
+        }
+
+        if (image != null) {
+            // Keep track of use for the least recently used trimming.
+            file.setLastModified(System.currentTimeMillis());
+        }
+
+        return image;
+    }
+
+    /**
+     * Stores a code on disk, replacing any stored under the same key. This returns immediately; the
+     * code is written in the background.
+     * 
+     * @param key the encoded LevelUp code.
+     * @param image the code.
+     */
+    public void put(final String key, final CompactQrCodeImage image) {
+        mWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(key, image);
+                trimToMaxEntries();
+            }
+        });
+    }
+
+    /**
+     * Deletes every stored code. This returns immediately; the files are deleted in the background,
+     * after any pending writes.
+     */
+    public void clear() {
+        mWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (File file : listCodeFiles()) {
+                    file.delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes a code to its file. Runs on the write thread.
+     * 
+     * @param key the encoded LevelUp code.
+     * @param image the code.
+     */
+    private void write(String key, CompactQrCodeImage image) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            LogManager.w("Could not create code cache directory %s", mDirectory);
+            return;
+        }
+
+        File file = getFile(key);
+
+        // Write to a temporary file first, so that readers never see a partial file.
+        File tempFile = new File(mDirectory, file.getName() + TEMP_FILE_SUFFIX);
+        DataOutputStream out = null;
+        boolean isWritten = false;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(FILE_MAGIC);
+            out.writeUTF(key);
+            image.writeTo(out);
+            out.close();
+            out = null;
+            isWritten = tempFile.renameTo(file);
+        } catch (IOException e) {
+            LogManager.w("Could not write cached code %s", file);
+        } finally {
+            closeQuietly(out);
+        }
+
+        if (!isWritten) {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until at most {@link #mMaxEntries} are left. Runs on
+     * the write thread.
+     */
+    private void trimToMaxEntries() {
+        File[] files = listCodeFiles();
+
+        if (files.length <= mMaxEntries) {
+            return;
+        }
+
+        Arrays.sort(files, LEAST_RECENTLY_USED_FIRST);
+
+        for (int i = 0; i < files.length - mMaxEntries; i++) {
+            files[i].delete();
+        }
+    }
+
+    /**
+     * @return the code files in the directory, which may be empty.
+     */
+    private File[] listCodeFiles() {
+        File[] files = mDirectory.listFiles(CODE_FILE_FILTER);
+
+        if (files == null) {
+            return new File[0];
+        }
+
+        return files;
+    }
+
+    /**
+     * @param key the encoded LevelUp code.
+     * @return the file the code is stored in.
+     */
+    private File getFile(String key) {
+        return new File(mDirectory, Integer.toHexString(key.hashCode()) + FILE_SUFFIX);
+    }
+
+    /**
+     * @param closeable a stream to close, or {@code null}.
+     */
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+        }
+    }
+
+    /**
+     * @return a single background-priority thread to do the writes on. Using one thread keeps the
+     *         writes and deletions in order.
+     */
+    private static ExecutorService newWriteExecutor() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "DiskCodeCache");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+    }
+}
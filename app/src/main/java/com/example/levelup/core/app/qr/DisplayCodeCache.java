@@ -0,0 +1,633 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.qr;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+import com.scvngr.levelup.core.ui.view.CodeCache;
+import com.scvngr.levelup.core.ui.view.LevelUpQrCodeGenerator.LevelUpQrCodeImage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+
+/**
+ * <p>
+ * A {@link CodeCache} that sits in front of another one and keeps copies of the codes that have
+ * been displayed, scaled up to the size of the view that displays them. The generators make one
+ * pixel per module, which the view would otherwise scale on every draw; a code that's already the
+ * size of the view is drawn as is.
+ * </p>
+ * <p>
+ * Codes are scaled by a whole number with nearest-neighbor sampling, so every module stays a crisp
+ * square, and are padded with extra margin to fill the view exactly. The scaled copies are only
+ * thrown away when the display size changes, see {@link #setDisplaySize(int, int)}. Until the size
+ * is known, codes are passed through unscaled.
+ * </p>
+ * <p>
+ * {@link #getCode(String)} returns the scaled copy if there is one, and otherwise the code at its
+ * original size from the backing cache, so that a code cached on disk is displayed on the first
+ * frame after a cold start. It never scales codes itself; {@link PrioritizedCodeLoader} scales
+ * them on its worker threads, and tells this cache about each code it delivers so that only the
+ * original reaches the backing cache; see
+ * {@link #beginDelivery(String, LevelUpQrCodeImage, LevelUpQrCodeImage, boolean)}. This class is
+ * thread safe.
+ * </p>
+ * <p>
+ * If a {@link BitmapPool} is given, the scaled bitmaps are taken from it, and given back once
+ * they're known to be off screen: out of this cache and released by every view that displayed
+ * them. A view retains the code it has just loaded with {@link #retainCode(String)}, and releases
+ * it with {@link #releaseCode(LevelUpQrCodeImage)} once it shows another one. A scaled code that
+ * was handed out but never retained is left to the garbage collector instead, as something may
+ * still be drawing it.
+ * </p>
+ */
+public final class DisplayCodeCache implements CodeCache {
+
+    /**
+     * The default size of the scaled copies, in bytes. This fits a few full-screen codes: the one
+     * being displayed, the one being swapped in and a couple of neighbors.
+     */
+    public static final int DEFAULT_MAX_SIZE_BYTES = 4 * 1024 * 1024;
+
+    private final CodeCache mBackingCache;
+
+    /**
+     * The scaled codes. They're all scaled for the current display size.
+     */
+    private final LruCache<String, LevelUpQrCodeImage> mCache;
+
+    @Nullable
+    private final BitmapPool mBitmapPool;
+
+    /**
+     * The scaled codes that this cache made and hasn't let go of yet, by identity. Guarded by
+     * {@code this}.
+     */
+    private final IdentityHashMap<LevelUpQrCodeImage, ScaledCode> mScaledCodes =
+            new IdentityHashMap<LevelUpQrCodeImage, ScaledCode>();
+
+    /**
+     * The scaled code most recently handed out for each key. Guarded by {@code this}.
+     */
+    private final HashMap<String, LevelUpQrCodeImage> mHandedOutCodes =
+            new HashMap<String, LevelUpQrCodeImage>();
+
+    /**
+     * Set while {@link #trimToSize(int)} evicts codes. Guarded by {@code this}.
+     */
+    private boolean mIsTrimming;
+
+    /**
+     * The code being delivered by the loader, or {@code null} if there's none. Only accessed on the
+     * main thread.
+     */
+    @Nullable
+    private Delivery mDelivery;
+
+    /**
+     * Used to scale the codes without smoothing.
+     */
+    private final Paint mPaint = new Paint();
+
+    /**
+     * The size of the area that the codes are displayed in, in pixels. Guarded by {@code this}.
+     */
+    private int mDisplayWidth;
+
+    /**
+     * The size of the area that the codes are displayed in, in pixels. Guarded by {@code this}.
+     */
+    private int mDisplayHeight;
+
+    /**
+     * Creates a cache of {@link #DEFAULT_MAX_SIZE_BYTES}.
+     *
+     * @param backingCache the cache that holds the codes at their original size.
+     */
+    public DisplayCodeCache(CodeCache backingCache) {
+        this(backingCache, DEFAULT_MAX_SIZE_BYTES, null);
+    }
+
+    /**
+     * @param backingCache the cache that holds the codes at their original size.
+     * @param maxSizeBytes the maximum size of the scaled copies, in bytes.
+     * @param bitmapPool the pool to take the scaled bitmaps from and give evicted bitmaps back to,
+     *        or {@code null} to allocate new bitmaps.
+     */
+    public DisplayCodeCache(CodeCache backingCache, int maxSizeBytes,
+            @Nullable BitmapPool bitmapPool) {
+        mBackingCache = backingCache;
+        mBitmapPool = bitmapPool;
+        mPaint.setFilterBitmap(false);
+        mCache = new LruCache<String, LevelUpQrCodeImage>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(String key, LevelUpQrCodeImage value) {
+                Bitmap bitmap = value.getBitmap();
+
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, LevelUpQrCodeImage oldValue,
+                    LevelUpQrCodeImage newValue) {
+                onEntryRemoved(oldValue);
+            }
+        };
+    }
+
+    /**
+     * Sets the size of the area that the codes are displayed in. The scaled codes are discarded
+     * if it's different from the current size. This should be called whenever the view is laid
+     * out.
+     *
+     * @param width the width, in pixels, excluding padding.
+     * @param height the height, in pixels, excluding padding.
+     */
+    public void setDisplaySize(int width, int height) {
+        synchronized (this) {
+            if (width == mDisplayWidth && height == mDisplayHeight) {
+                return;
+            }
+
+            mDisplayWidth = width;
+            mDisplayHeight = height;
+        }
+
+        mCache.evictAll();
+    }
+
+    /**
+     * Returns the scaled copy of the code if there is one. Otherwise, the code is read from the
+     * backing cache at its original size, without scaling it; the view scales it when it draws,
+     * until the code is loaded again. The backing cache may read a small file from disk.
+     */
+    @Override
+    @Nullable
+    public LevelUpQrCodeImage getCode(String key) {
+        synchronized (this) {
+            LevelUpQrCodeImage image = mCache.get(key);
+
+            if (image != null) {
+                onHandedOut(key, image);
+
+                return image;
+            }
+        }
+
+        return mBackingCache.getCode(key);
+    }
+
+    /**
+     * Stores a code in the backing cache. While the loader is delivering a code, the scaled copy it
+     * hands out is swapped back for the original, and codes that came from the backing cache
+     * aren't stored again.
+     */
+    @Override
+    public void putCode(String key, LevelUpQrCodeImage image) {
+        Delivery delivery = mDelivery;
+
+        if (delivery != null && (image == delivery.mDisplayImage || image == delivery.mImage)) {
+            if (delivery.mIsStored) {
+                return;
+            }
+
+            delivery.mIsStored = true;
+            image = delivery.mImage;
+        }
+
+        synchronized (this) {
+            // Scaled copies only live in this cache.
+            if (mScaledCodes.containsKey(image)) {
+                return;
+            }
+        }
+
+        mBackingCache.putCode(key, image);
+    }
+
+    /**
+     * Looks a code up in the backing cache. This may read from disk, so it must not be called from
+     * the main thread.
+     *
+     * @param key the code's key.
+     * @return the code at its original size, or {@code null} if it isn't cached.
+     */
+    @Nullable
+    LevelUpQrCodeImage getOriginalCode(String key) {
+        return mBackingCache.getCode(key);
+    }
+
+    /**
+     * Scales a code to the display size, off the main thread. The result is only kept once it's
+     * delivered, see {@link #beginDelivery(String, LevelUpQrCodeImage, LevelUpQrCodeImage,
+     * boolean)}.
+     *
+     * @param image the code at its original size.
+     * @return the scaled code, or {@code image} if the display size isn't known yet.
+     */
+    LevelUpQrCodeImage createDisplayImage(LevelUpQrCodeImage image) {
+        int displaySize;
+
+        synchronized (this) {
+            displaySize = Math.min(mDisplayWidth, mDisplayHeight);
+        }
+
+        return scale(image, displaySize);
+    }
+
+    /**
+     * <p>
+     * Called by the loader on the main thread just before it hands a code to the loads waiting on
+     * it, which makes {@link com.scvngr.levelup.core.ui.view.LevelUpCodeLoader} put the code in
+     * this cache. Until
+     * {@link #endDelivery()}, {@link #putCode(String, LevelUpQrCodeImage)} stores
+     * {@code image} rather than the scaled {@code displayImage}, only once, and not at all if the
+     * code came from the backing cache.
+     * </p>
+     * <p>
+     * If {@code displayImage} was scaled for the current display size, it's kept for
+     * {@link #getCode(String)}.
+     * </p>
+     *
+     * @param key the code's key.
+     * @param image the code at its original size.
+     * @param displayImage the code that's handed out: {@code image} or its scaled copy from
+     *        {@link #createDisplayImage(LevelUpQrCodeImage)}.
+     * @param isCached true if {@code image} came from {@link #getOriginalCode(String)}.
+     */
+    void beginDelivery(String key, LevelUpQrCodeImage image, LevelUpQrCodeImage displayImage,
+            boolean isCached) {
+        mDelivery = new Delivery(key, image, displayImage, isCached);
+
+        if (displayImage == image) {
+            return;
+        }
+
+        synchronized (this) {
+            ScaledCode scaledCode = new ScaledCode(key);
+            mScaledCodes.put(displayImage, scaledCode);
+            onHandedOut(key, displayImage);
+
+            // Don't keep codes scaled for a size that has since changed.
+            if (displayImage.getBitmap().getWidth() == Math.min(mDisplayWidth, mDisplayHeight)) {
+                scaledCode.mIsCached = true;
+                mCache.put(key, displayImage);
+            }
+        }
+    }
+
+    /**
+     * Called by the loader on the main thread once it has handed out the code passed to
+     * {@link #beginDelivery(String, LevelUpQrCodeImage, LevelUpQrCodeImage, boolean)}. Stores the
+     * original in the backing cache if that hasn't happened yet. If only the scaled copy was
+     * handed out, the original's bitmap is given back to the pool, as an {@link LruCodeCache}
+     * keeps its own packed copy.
+     */
+    void endDelivery() {
+        Delivery delivery = mDelivery;
+        mDelivery = null;
+
+        if (delivery == null) {
+            return;
+        }
+
+        if (!delivery.mIsStored) {
+            delivery.mIsStored = true;
+            mBackingCache.putCode(delivery.mKey, delivery.mImage);
+        }
+
+        if (mBitmapPool != null && delivery.mDisplayImage != delivery.mImage
+                && mBackingCache instanceof LruCodeCache) {
+            mBitmapPool.put(delivery.mImage.getBitmap());
+        }
+    }
+
+    /**
+     * Marks the scaled code that was just handed out for {@code key} as displayed by one more view,
+     * so that its bitmap isn't given back to the pool until the view releases it. Call this on the
+     * main thread as soon as a view has loaded the code.
+     *
+     * @param key the code's key.
+     * @return the code, to pass to {@link #releaseCode(LevelUpQrCodeImage)} once the view no
+     *         longer shows it, or {@code null} if this cache didn't hand out a scaled code for
+     *         {@code key}.
+     */
+    @Nullable
+    public synchronized LevelUpQrCodeImage retainCode(String key) {
+        LevelUpQrCodeImage image = mHandedOutCodes.get(key);
+
+        if (image == null) {
+            return null;
+        }
+
+        ScaledCode scaledCode = mScaledCodes.get(image);
+
+        if (scaledCode.mPendingCount == 0) {
+            // The view was handed an unscaled code.
+            return null;
+        }
+
+        scaledCode.mPendingCount--;
+        scaledCode.mRetainCount++;
+
+        return image;
+    }
+
+    /**
+     * Releases a code retained with {@link #retainCode(String)}, for example when the view that
+     * displayed it has swapped in another code. Its bitmap is given back to the pool if it's no
+     * longer in this cache and no other view displays it.
+     *
+     * @param image the code returned by {@link #retainCode(String)}, or {@code null}.
+     */
+    public synchronized void releaseCode(@Nullable LevelUpQrCodeImage image) {
+        ScaledCode scaledCode = image != null ? mScaledCodes.get(image) : null;
+
+        if (scaledCode != null && scaledCode.mRetainCount > 0) {
+            scaledCode.mRetainCount--;
+            recycleIfDetached(image, scaledCode);
+        }
+    }
+
+    /**
+     * Discards all of the scaled codes. The backing cache is left alone. Codes that views still
+     * retain stay out of the pool until they're released.
+     */
+    public void clear() {
+        mCache.evictAll();
+
+        synchronized (this) {
+            for (LevelUpQrCodeImage image : new ArrayList<LevelUpQrCodeImage>(
+                    mHandedOutCodes.values())) {
+                forgetHandOuts(image);
+            }
+
+            mHandedOutCodes.clear();
+        }
+    }
+
+    /**
+     * Evicts the least recently used scaled codes until they take no more than
+     * {@code maxSizeBytes}. This is meant for freeing memory, so the evicted bitmaps are dropped
+     * rather than given back to the pool, whether or not the pool has been trimmed yet.
+     *
+     * @param maxSizeBytes the size to trim to, in bytes. Pass 0 to discard every scaled code.
+     */
+    public void trimToSize(int maxSizeBytes) {
+        synchronized (this) {
+            mIsTrimming = true;
+
+            try {
+                mCache.trimToSize(maxSizeBytes);
+            } finally {
+                mIsTrimming = false;
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes currently held by the scaled codes.
+     */
+    public int getSizeBytes() {
+        return mCache.size();
+    }
+
+    /**
+     * @return the maximum number of bytes the scaled codes will take.
+     */
+    public int getMaxSizeBytes() {
+        return mCache.maxSize();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "DisplayCodeCache[size=%d, maxSize=%d, hits=%d, misses=%d, evictions=%d]",
+                mCache.size(), mCache.maxSize(), mCache.hitCount(), mCache.missCount(),
+                mCache.evictionCount());
+    }
+
+    /**
+     * Remembers that a code was handed out. If it's a scaled code, it's kept out of the pool until
+     * the view it was handed to retains it and later releases it. Must be called while holding
+     * {@code this}.
+     *
+     * @param key the code's key.
+     * @param image the code.
+     */
+    private void onHandedOut(String key, LevelUpQrCodeImage image) {
+        ScaledCode scaledCode = mScaledCodes.get(image);
+
+        if (scaledCode == null) {
+            return;
+        }
+
+        LevelUpQrCodeImage previousImage = mHandedOutCodes.put(key, image);
+        scaledCode.mPendingCount++;
+
+        if (previousImage != null && previousImage != image) {
+            forgetHandOuts(previousImage);
+        }
+    }
+
+    /**
+     * Stops waiting for views to retain a scaled code that was handed out for its key. Whatever
+     * it was handed to may still be drawing it, so if it's still waiting, its bitmap is never
+     * given back to the pool. Must be called while holding {@code this}.
+     *
+     * @param image the scaled code.
+     */
+    private void forgetHandOuts(LevelUpQrCodeImage image) {
+        ScaledCode scaledCode = mScaledCodes.get(image);
+
+        if (scaledCode == null) {
+            return;
+        }
+
+        if (scaledCode.mPendingCount > 0) {
+            scaledCode.mPendingCount = 0;
+            scaledCode.mIsRecyclable = false;
+        }
+
+        if (mHandedOutCodes.get(scaledCode.mKey) == image) {
+            mHandedOutCodes.remove(scaledCode.mKey);
+        }
+
+        recycleIfDetached(image, scaledCode);
+    }
+
+    /**
+     * Lets go of a scaled code once it's out of this cache and nothing displays it, giving its
+     * bitmap back to the pool if it's known to be detached. Must be called while holding
+     * {@code this}.
+     *
+     * @param image the scaled code.
+     * @param scaledCode its state.
+     */
+    private void recycleIfDetached(LevelUpQrCodeImage image, ScaledCode scaledCode) {
+        if (scaledCode.mIsCached || scaledCode.mPendingCount > 0 || scaledCode.mRetainCount > 0) {
+            return;
+        }
+
+        mScaledCodes.remove(image);
+
+        if (mHandedOutCodes.get(scaledCode.mKey) == image) {
+            mHandedOutCodes.remove(scaledCode.mKey);
+        }
+
+        if (scaledCode.mIsRecyclable && !mIsTrimming && mBitmapPool != null) {
+            mBitmapPool.put(image.getBitmap());
+        }
+    }
+
+    /**
+     * Called when a scaled code leaves the cache.
+     *
+     * @param image the scaled code.
+     */
+    private synchronized void onEntryRemoved(LevelUpQrCodeImage image) {
+        ScaledCode scaledCode = mScaledCodes.get(image);
+
+        if (scaledCode == null) {
+            return;
+        }
+
+        scaledCode.mIsCached = false;
+
+        // A code that's no longer cached won't be handed out again.
+        forgetHandOuts(image);
+    }
+
+    /**
+     * Scales a code up by the largest whole number that fits it in a square, then pads the margin
+     * so that it fills the square.
+     *
+     * @param image the code to scale.
+     * @param displaySize the size of the square, in pixels.
+     * @return the scaled code, or {@code image} if it doesn't need to be scaled.
+     */
+    private LevelUpQrCodeImage scale(LevelUpQrCodeImage image, int displaySize) {
+        Bitmap bitmap = image.getBitmap();
+        int size = Math.max(bitmap.getWidth(), bitmap.getHeight());
+
+        if (size <= 0 || displaySize <= size) {
+            return image;
+        }
+
+        int scale = displaySize / size;
+        int scaledWidth = bitmap.getWidth() * scale;
+        int scaledHeight = bitmap.getHeight() * scale;
+        int left = (displaySize - scaledWidth) / 2;
+        int top = (displaySize - scaledHeight) / 2;
+
+        Bitmap.Config config =
+                bitmap.getConfig() == Bitmap.Config.ALPHA_8 ? Bitmap.Config.ALPHA_8
+                        : Bitmap.Config.RGB_565;
+        Bitmap scaledBitmap;
+
+        if (mBitmapPool != null) {
+            scaledBitmap = mBitmapPool.getOrCreate(displaySize, displaySize, config);
+        } else {
+            scaledBitmap = Bitmap.createBitmap(displaySize, displaySize, config);
+        }
+
+        // ALPHA_8 codes are drawn over the view's background, so the padding stays transparent.
+        if (config == Bitmap.Config.ALPHA_8) {
+            scaledBitmap.eraseColor(Color.TRANSPARENT);
+        } else {
+            scaledBitmap.eraseColor(Color.WHITE);
+        }
+
+        new Canvas(scaledBitmap).drawBitmap(bitmap, null, new Rect(left, top, left + scaledWidth,
+                top + scaledHeight), mPaint);
+
+        return new LevelUpQrCodeImage(scaledBitmap, image.getTargetSize() * scale,
+                image.getMarginSize() * scale + Math.min(left, top));
+    }
+
+    /**
+     * What's known about where a scaled code is. Its bitmap is given back to the pool only once
+     * nothing can draw it any more, which no single one of these fields can tell: a code that's
+     * been evicted may still be on screen, and a code that no view retains may still be cached and
+     * handed out again.
+     */
+    private static final class ScaledCode {
+
+        /**
+         * The code's key, to find it in {@link DisplayCodeCache#mHandedOutCodes}.
+         */
+        private final String mKey;
+
+        /**
+         * True while the code is in {@link DisplayCodeCache#mCache}, so
+         * {@link DisplayCodeCache#getCode(String)} may still hand it out.
+         */
+        private boolean mIsCached;
+
+        /**
+         * The number of times the code was handed out and not retained yet. The view it was
+         * handed to may be about to draw it, between the loader's callback and the view's
+         * {@code onCodeLoad}.
+         */
+        private int mPendingCount;
+
+        /**
+         * The number of views that display the code.
+         */
+        private int mRetainCount;
+
+        /**
+         * False if the code may be drawn by something that didn't retain it: a hand-out that was
+         * never retained can't be released either, so its bitmap is left to the garbage collector.
+         */
+        private boolean mIsRecyclable = true;
+
+        /**
+         * @param key the code's key.
+         */
+        public ScaledCode(String key) {
+            mKey = key;
+        }
+    }
+
+    /**
+     * A code that the loader is delivering.
+     */
+    private static final class Delivery {
+        private final String mKey;
+        private final LevelUpQrCodeImage mImage;
+        private final LevelUpQrCodeImage mDisplayImage;
+
+        /**
+         * True once the original is in the backing cache, or if it came from there.
+         */
+        private boolean mIsStored;
+
+        public Delivery(String key, LevelUpQrCodeImage image, LevelUpQrCodeImage displayImage,
+                boolean isCached) {
+            mKey = key;
+            mImage = image;
+            mDisplayImage = displayImage;
+            mIsStored = isCached;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.qr;
+
+import android.support.annotation.Nullable;
+
+/**
+ * <p>
+ * A size-bounded, least recently used table keyed by primitive 64-bit hashes of strings. The keys
+ * live in an open-addressing {@code long[]} with linear probing, so lookups neither box the key nor
+ * touch the original string, and the table doesn't hold on to the strings at all.
+ * </p>
+ * <p>
+ * Two strings can hash to the same 64-bit key, so every entry also records a second, independent
+ * 32-bit check hash. A lookup whose check doesn't match is treated as a miss, and a put replaces
+ * the colliding entry.
+ * </p>
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ *
+ * @param <V> the type of the values.
+ */
+final class LongLruTable<V> {
+
+    /**
+     * The initial number of slots. Must be a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final long FNV_64_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_64_PRIME = 0x100000001b3L;
+
+    /**
+     * The keys of the slots. Only meaningful where {@link #mEntries} isn't {@code null}.
+     */
+    private long[] mKeys = new long[INITIAL_CAPACITY];
+
+    /**
+     * The entries of the slots, or {@code null} for empty slots.
+     */
+    private Entry<V>[] mEntries = newEntryArray(INITIAL_CAPACITY);
+
+    /**
+     * The least recently used entry, or {@code null} if the table is empty.
+     */
+    @Nullable
+    private Entry<V> mEldest;
+
+    /**
+     * The most recently used entry, or {@code null} if the table is empty.
+     */
+    @Nullable
+    private Entry<V> mNewest;
+
+    private int mCount;
+
+    private int mSizeBytes;
+
+    /**
+     * @param string the string to hash.
+     * @return the 64-bit FNV-1a hash of the string's characters.
+     */
+    public static long hash64(String string) {
+        long hash = FNV_64_OFFSET_BASIS;
+
+        for (int i = 0, length = string.length(); i < length; i++) {
+            hash ^= string.charAt(i);
+            hash *= FNV_64_PRIME;
+        }
+
+        return hash;
+    }
+
+    /**
+     * @param string the string to hash.
+     * @return a 32-bit hash of the string that's independent of {@link #hash64(String)}. Strings
+     *         cache this, so it's free after the first call.
+     */
+    public static int checkHash(String string) {
+        return string.hashCode();
+    }
+
+    /**
+     * Looks up a value and marks it as the most recently used.
+     *
+     * @param key the 64-bit hash of the string.
+     * @param check the check hash of the string.
+     * @return the value or {@code null} if there's none for the string.
+     */
+    @Nullable
+    public V get(long key, int check) {
+        int slot = findSlot(key);
+
+        if (slot < 0 || mEntries[slot].mCheck != check) {
+            return null;
+        }
+
+        Entry<V> entry = mEntries[slot];
+        moveToNewest(entry);
+
+        return entry.mValue;
+    }
+
+    /**
+     * Adds or replaces a value and marks it as the most recently used. The table isn't trimmed.
+     *
+     * @param key the 64-bit hash of the string.
+     * @param check the check hash of the string.
+     * @param value the value.
+     * @param sizeBytes the size of the value, in bytes.
+     */
+    public void put(long key, int check, V value, int sizeBytes) {
+        int slot = findSlot(key);
+
+        if (slot >= 0) {
+            Entry<V> entry = mEntries[slot];
+            mSizeBytes += sizeBytes - entry.mSizeBytes;
+            entry.mCheck = check;
+            entry.mValue = value;
+            entry.mSizeBytes = sizeBytes;
+            moveToNewest(entry);
+
+            return;
+        }
+
+        if ((mCount + 1) * 2 > mEntries.length) {
+            resize(mEntries.length * 2);
+            slot = findSlot(key);
+        }
+
+        slot = ~slot;
+
+        Entry<V> entry = new Entry<V>(key, check, value, sizeBytes);
+        mKeys[slot] = key;
+        mEntries[slot] = entry;
+        mCount++;
+        mSizeBytes += sizeBytes;
+        linkNewest(entry);
+    }
+
+    /**
+     * Removes the least recently used entries until the table is no larger than
+     * {@code maxSizeBytes}.
+     *
+     * @param maxSizeBytes the size to trim to, in bytes.
+     * @return the number of entries that were removed.
+     */
+    public int trimToSize(int maxSizeBytes) {
+        int removedCount = 0;
+
+        while (mSizeBytes > maxSizeBytes && mEldest != null) {
+            removeSlot(findSlot(mEldest.mKey));
+            removedCount++;
+        }
+
+        return removedCount;
+    }
+
+    /**
+     * @return the total size of the values, in bytes.
+     */
+    public int getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @param key a 64-bit key.
+     * @return the slot holding {@code key}, or the one's complement of the empty slot where it
+     *         would go.
+     */
+    private int findSlot(long key) {
+        int mask = mEntries.length - 1;
+        int slot = getHomeSlot(key, mask);
+
+        while (mEntries[slot] != null) {
+            if (mKeys[slot] == key) {
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return ~slot;
+    }
+
+    /**
+     * Empties a slot, shifting back the entries that probed past it so that no tombstones are
+     * needed.
+     *
+     * @param slot an occupied slot.
+     */
+    private void removeSlot(int slot) {
+        Entry<V> entry = mEntries[slot];
+        unlink(entry);
+        mCount--;
+        mSizeBytes -= entry.mSizeBytes;
+
+        int mask = mEntries.length - 1;
+        int hole = slot;
+        int next = slot;
+        mEntries[hole] = null;
+
+        while (true) {
+            next = (next + 1) & mask;
+
+            if (mEntries[next] == null) {
+                break;
+            }
+
+            int home = getHomeSlot(mKeys[next], mask);
+
+            // Entries whose home is cyclically within (hole, next] are still reachable.
+            boolean isReachable =
+                    hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+
+            if (!isReachable) {
+                mKeys[hole] = mKeys[next];
+                mEntries[hole] = mEntries[next];
+                mEntries[next] = null;
+                hole = next;
+            }
+        }
+    }
+
+    /**
+     * @param capacity the new number of slots. Must be a power of two.
+     */
+    private void resize(int capacity) {
+        Entry<V>[] oldEntries = mEntries;
+        int mask = capacity - 1;
+
+        mKeys = new long[capacity];
+        mEntries = newEntryArray(capacity);
+
+        for (Entry<V> entry : oldEntries) {
+            if (entry != null) {
+                int slot = getHomeSlot(entry.mKey, mask);
+
+                while (mEntries[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+
+                mKeys[slot] = entry.mKey;
+                mEntries[slot] = entry;
+            }
+        }
+    }
+
+    private void moveToNewest(Entry<V> entry) {
+        if (entry != mNewest) {
+            unlink(entry);
+            linkNewest(entry);
+        }
+    }
+
+    private void linkNewest(Entry<V> entry) {
+        entry.mOlder = mNewest;
+        entry.mNewer = null;
+
+        if (mNewest != null) {
+            mNewest.mNewer = entry;
+        } else {
+            mEldest = entry;
+        }
+
+        mNewest = entry;
+    }
+
+    private void unlink(Entry<V> entry) {
+        if (entry.mOlder != null) {
+            entry.mOlder.mNewer = entry.mNewer;
+        } else {
+            mEldest = entry.mNewer;
+        }
+
+        if (entry.mNewer != null) {
+            entry.mNewer.mOlder = entry.mOlder;
+        } else {
+            mNewest = entry.mOlder;
+        }
+
+        entry.mOlder = null;
+        entry.mNewer = null;
+    }
+
+    /**
+     * @param key a 64-bit key.
+     * @param mask the number of slots minus one.
+     * @return the slot that the key's probe starts at.
+     */
+    private static int getHomeSlot(long key, int mask) {
+        // The keys are already hashes; fold the high bits in so that every bit counts.
+        int hash = (int) (key ^ (key >>> 32));
+
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Entry<V>[] newEntryArray(int capacity) {
+        return new Entry[capacity];
+    }
+
+    /**
+     * A value along with its place in the usage order.
+     *
+     * @param <V> the type of the value.
+     */
+    private static final class Entry<V> {
+        private final long mKey;
+        private int mCheck;
+        private V mValue;
+        private int mSizeBytes;
+
+        @Nullable
+        private Entry<V> mOlder;
+
+        @Nullable
+        private Entry<V> mNewer;
+
+        public Entry(long key, int check, V value, int sizeBytes) {
+            mKey = key;
+            mCheck = check;
+            mValue = value;
+            mSizeBytes = sizeBytes;
+        }
+    }
+}
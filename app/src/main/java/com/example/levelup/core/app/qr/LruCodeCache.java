@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.qr;
+
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.ui.view.CodeCache;
+import com.scvngr.levelup.core.ui.view.LevelUpQrCodeGenerator.LevelUpQrCodeImage;
+
+import java.util.Locale;
+
+/**
+ * <p>
+ * A bounded, in-memory {@link CodeCache} that stores codes as {@link CompactQrCodeImage}s. Codes
+ * are packed when they're put in the cache and inflated back into bitmaps when they're retrieved
+ * for display, so many more codes fit in the memory that a handful of bitmaps would take.
+ * </p>
+ * <p>
+ * The cache holds at most a fixed number of bytes, as measured by
+ * {@link CompactQrCodeImage#getByteCount()}. Once it's full, the least recently used codes are
+ * evicted. This class is thread safe.
+ * </p>
+ * <p>
+ * The in-memory tier is keyed by 64-bit hashes of the keys rather than the keys themselves, see
+ * {@link LongLruTable}. Keys are whole encoded codes, payment token included, so this saves
+ * comparing long strings on every lookup, and the cache doesn't keep a copy of them.
+ * Callers that look the same codes up repeatedly can keep the hashes and pass them in, such as to
+ * {@link #hasCode(String, long)}.
+ * </p>
+ * <p>
+ * The cache holds the codes of one namespace at a time, normally a payment token; see
+ * {@link #setNamespace(String)}. Moving to another namespace drops every code in memory at once, so
+ * codes for a token that can no longer be used don't linger.
+ * </p>
+ * <p>
+ * An optional {@link DiskCodeCache} can sit under the in-memory tier. Every code put in the cache
+ * is also written to disk, and codes missing from memory are looked for on disk before giving up.
+ * This lets the last code shown be displayed straight away on the next launch.
+ * </p>
+ */
+public final class LruCodeCache implements CodeCache {
+
+    /**
+     * The default size of the cache, in bytes. This holds a couple hundred typical codes, which is
+     * plenty for every tip and color variant of a payment token.
+     */
+    public static final int DEFAULT_MAX_SIZE_BYTES = 64 * 1024;
+
+    /**
+     * The in-memory tier for the current namespace. Guarded by {@code this}.
+     */
+    private LongLruTable<CompactQrCodeImage> mCache = new LongLruTable<CompactQrCodeImage>();
+
+    /**
+     * The namespace the cached codes belong to, or {@code null} if it isn't known. Guarded by
+     * {@code this}.
+     */
+    @Nullable
+    private String mNamespace;
+
+    private final int mMaxSizeBytes;
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private int mHitCount;
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private int mMissCount;
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private int mEvictionCount;
+
+    @Nullable
+    private final DiskCodeCache mDiskCache;
+
+    /**
+     * @param key a code's key.
+     * @return the 64-bit hash of the key, for the methods that take one.
+     */
+    public static long hashKey(String key) {
+        return LongLruTable.hash64(key);
+    }
+
+    /**
+     * Creates an in-memory cache of {@link #DEFAULT_MAX_SIZE_BYTES}.
+     */
+    public LruCodeCache() {
+        this(DEFAULT_MAX_SIZE_BYTES, null);
+    }
+
+    /**
+     * @param maxSizeBytes the maximum size of the in-memory tier, in bytes.
+     * @param diskCache the disk tier or {@code null} to only cache in memory.
+     */
+    public LruCodeCache(int maxSizeBytes, @Nullable DiskCodeCache diskCache) {
+        mDiskCache = diskCache;
+        mMaxSizeBytes = maxSizeBytes;
+    }
+
+    @Override
+    @Nullable
+    public LevelUpQrCodeImage getCode(String key) {
+        return getCode(key, hashKey(key));
+    }
+
+    /**
+     * Like {@link #getCode(String)}, with the key's hash already computed.
+     *
+     * @param key the code's key.
+     * @param hash the {@link #hashKey(String) hash} of {@code key}.
+     * @return the code or {@code null} if it isn't cached.
+     */
+    @Nullable
+    public LevelUpQrCodeImage getCode(String key, long hash) {
+        int check = LongLruTable.checkHash(key);
+        CompactQrCodeImage image = getFromMemory(hash, check);
+
+        if (image == null && mDiskCache != null) {
+            image = mDiskCache.get(key);
+
+            if (image != null) {
+                putInMemory(hash, check, image);
+            }
+        }
+
+        if (image == null) {
+            return null;
+        }
+
+        return image.toImage();
+    }
+
+    @Override
+    public void putCode(String key, LevelUpQrCodeImage image) {
+        putCode(key, hashKey(key), image);
+    }
+
+    /**
+     * Like {@link #putCode(String, LevelUpQrCodeImage)}, with the key's hash already computed.
+     *
+     * @param key the code's key.
+     * @param hash the {@link #hashKey(String) hash} of {@code key}.
+     * @param image the code.
+     */
+    public void putCode(String key, long hash, LevelUpQrCodeImage image) {
+        CompactQrCodeImage compactImage = CompactQrCodeImage.fromImage(image);
+
+        putInMemory(hash, LongLruTable.checkHash(key), compactImage);
+
+        if (mDiskCache != null) {
+            mDiskCache.put(key, compactImage);
+        }
+    }
+
+    /**
+     * Checks whether a code is in the in-memory tier without inflating it. This counts as a use of
+     * the code.
+     * 
+     * @param key the code's key.
+     * @return true if the code is cached in memory.
+     */
+    public boolean hasCode(String key) {
+        return hasCode(key, hashKey(key));
+    }
+
+    /**
+     * Like {@link #hasCode(String)}, with the key's hash already computed.
+     *
+     * @param key the code's key.
+     * @param hash the {@link #hashKey(String) hash} of {@code key}.
+     * @return true if the code is cached in memory.
+     */
+    public boolean hasCode(String key, long hash) {
+        return getFromMemory(hash, LongLruTable.checkHash(key)) != null;
+    }
+
+    /**
+     * Removes every code from the cache, including the disk tier. The namespace is forgotten.
+     */
+    public void clear() {
+        synchronized (this) {
+            trimToSize(-1);
+            mNamespace = null;
+        }
+
+        if (mDiskCache != null) {
+            mDiskCache.clear();
+        }
+    }
+
+    /**
+     * <p>
+     * Sets the namespace that codes put in the cache from now on belong to. Callers use the
+     * payment token the codes are encoded with.
+     * </p>
+     * <p>
+     * If the cache already belongs to another namespace, all of its codes are dropped: the
+     * in-memory tier is replaced in constant time and the disk tier is cleared in the background.
+     * If the namespace wasn't known yet, for example just after launch, the cache is adopted by
+     * the new namespace as is. Passing {@code null} drops every code, for example when the
+     * payment token has been revoked.
+     * </p>
+     * 
+     * @param namespace the namespace, or {@code null} if there's none.
+     */
+    public void setNamespace(@Nullable String namespace) {
+        synchronized (this) {
+            if (namespace == null ? mNamespace == null : namespace.equals(mNamespace)) {
+                return;
+            }
+
+            boolean isDropping = mNamespace != null || namespace == null;
+            mNamespace = namespace;
+
+            if (!isDropping) {
+                return;
+            }
+
+            mEvictionCount += mCache.getCount();
+            mCache = new LongLruTable<CompactQrCodeImage>();
+        }
+
+        if (mDiskCache != null) {
+            mDiskCache.clear();
+        }
+    }
+
+    /**
+     * Evicts the least recently used codes until the cache is no larger than {@code maxSizeBytes}.
+     * 
+     * @param maxSizeBytes the size to trim to, in bytes. Pass 0 to empty the cache.
+     */
+    public synchronized void trimToSize(int maxSizeBytes) {
+        mEvictionCount += mCache.trimToSize(maxSizeBytes);
+    }
+
+    /**
+     * @return the number of codes in the in-memory tier.
+     */
+    public synchronized int getCount() {
+        return mCache.getCount();
+    }
+
+    /**
+     * @return the number of bytes currently held by the cache.
+     */
+    public synchronized int getSizeBytes() {
+        return mCache.getSizeBytes();
+    }
+
+    /**
+     * @return the maximum number of bytes the cache will hold.
+     */
+    public int getMaxSizeBytes() {
+        return mMaxSizeBytes;
+    }
+
+    /**
+     * @return the number of times a code was found in the in-memory tier.
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the number of times a code wasn't in the in-memory tier.
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the number of codes that have been evicted to stay under the maximum size.
+     */
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * @param hash the 64-bit hash of the key.
+     * @param check the check hash of the key.
+     * @return the code in the in-memory tier or {@code null} if it isn't there.
+     */
+    @Nullable
+    private synchronized CompactQrCodeImage getFromMemory(long hash, int check) {
+        CompactQrCodeImage image = mCache.get(hash, check);
+
+        if (image != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+
+        return image;
+    }
+
+    /**
+     * Puts a code in the in-memory tier, evicting the least recently used codes if it's full.
+     *
+     * @param hash the 64-bit hash of the key.
+     * @param check the check hash of the key.
+     * @param image the code.
+     */
+    private synchronized void putInMemory(long hash, int check, CompactQrCodeImage image) {
+        mCache.put(hash, check, image, image.getByteCount());
+        trimToSize(mMaxSizeBytes);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "LruCodeCache[count=%d, size=%d, maxSize=%d, hits=%d, misses=%d, evictions=%d]",
+                getCount(), getSizeBytes(), getMaxSizeBytes(), getHitCount(), getMissCount(),
+                getEvictionCount());
+    }
+}
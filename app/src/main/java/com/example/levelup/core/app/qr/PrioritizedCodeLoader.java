@@ -0,0 +1,623 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.app.qr;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.ui.view.CodeCache;
+import com.scvngr.levelup.core.ui.view.LevelUpCodeLoader;
+import com.scvngr.levelup.core.ui.view.LevelUpQrCodeGenerator;
+import com.scvngr.levelup.core.ui.view.LevelUpQrCodeGenerator.LevelUpQrCodeImage;
+import com.scvngr.levelup.core.ui.view.PendingImage;
+import com.scvngr.levelup.core.ui.view.PendingImage.OnImageLoaded;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A {@link LevelUpCodeLoader} that generates codes on a pool of threads, one per CPU core, in order
+ * of priority.
+ * </p>
+ * <p>
+ * Codes requested by a view are generated first. Codes requested through
+ * {@link #preCacheLevelUpCode(String)} wait until no view is waiting, and are generated at
+ * background thread priority so that they don't compete with the UI thread for frames. Codes are
+ * otherwise generated in the order they were requested.
+ * </p>
+ * <p>
+ * Requests for a code that's already being generated don't start another generation. They wait
+ * for the one in flight, and its result is delivered to all of them.
+ * </p>
+ * <p>
+ * A whole set of codes, such as every tip of a payment token and color, can be pre-cached at once
+ * with {@link #preCacheLevelUpCodes(String[], OnCodeSetLoadedListener)}. Each code is an ordinary
+ * pre-cache load, so the set is spread across all of the cores and a view that asks for one of the
+ * codes joins its load, and the codes are handed back together once the last one has loaded.
+ * </p>
+ * <p>
+ * If the cache is a {@link DisplayCodeCache}, its backing cache is checked again on the background
+ * thread before generating a code, in case another load has stored it since, and codes requested
+ * by a view are scaled to the display size there too, before they're delivered.
+ * </p>
+ * <p>
+ * Only the most recently requested visible code keeps visible priority. When a view asks for a new
+ * code, for example while the tip slider is being dragged, any older visible code that hasn't
+ * started yet drops to pre-cache priority so that the newest one is generated next. If the view
+ * cancels the older load, as {@link com.scvngr.levelup.core.ui.view.LevelUpCodeView} does when its
+ * code changes, it's removed from the queue entirely.
+ * </p>
+ * <p>
+ * All of the methods of this class must be called from the main thread.
+ * </p>
+ */
+public final class PrioritizedCodeLoader extends LevelUpCodeLoader {
+
+    /**
+     * Priority of a code that's being displayed.
+     */
+    private static final int PRIORITY_VISIBLE = 1;
+
+    /**
+     * Priority of a code that's being pre-cached.
+     */
+    private static final int PRIORITY_PRE_CACHE = 0;
+
+    /**
+     * The pool that generates the codes. It's shared by all loaders, so that there's only ever one
+     * thread per core generating codes.
+     */
+    private static final ThreadPoolExecutor EXECUTOR = newExecutor();
+
+    /**
+     * Orders tasks that have the same priority.
+     */
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final LevelUpQrCodeGenerator mQrCodeGenerator;
+
+    /**
+     * The cache, if it scales codes for display, or {@code null}.
+     */
+    @Nullable
+    private final DisplayCodeCache mDisplayCodeCache;
+
+    /**
+     * Results are delivered on the main thread.
+     */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The generations that haven't delivered their result yet, by encoded code.
+     */
+    private final HashMap<String, CodeLoadTask> mTasks = new HashMap<String, CodeLoadTask>();
+
+    /**
+     * The generation that each load is waiting on, by load key.
+     */
+    private final HashMap<String, CodeLoadTask> mTasksByKey = new HashMap<String, CodeLoadTask>();
+
+    /**
+     * The most recently requested code at visible priority, or {@code null} if it has finished.
+     */
+    private CodeLoadTask mLatestVisibleTask;
+
+    /**
+     * Set while {@link #preCacheLevelUpCode(String)} is starting a load.
+     */
+    private boolean mIsPreCaching;
+
+    /**
+     * @param qrCodeGenerator the generator to use.
+     * @param codeCache the cache to store the generated codes in.
+     */
+    public PrioritizedCodeLoader(LevelUpQrCodeGenerator qrCodeGenerator, CodeCache codeCache) {
+        super(qrCodeGenerator, codeCache);
+
+        mQrCodeGenerator = qrCodeGenerator;
+        mDisplayCodeCache =
+                codeCache instanceof DisplayCodeCache ? (DisplayCodeCache) codeCache : null;
+    }
+
+    /**
+     * Loads a code into the cache at pre-cache priority. Pre-cached codes are generated in the
+     * order of the most recent calls to this method: if the code is already waiting at pre-cache
+     * priority, it's moved behind the codes that were pre-cached since. Callers can therefore
+     * re-order the whole queue by pre-caching again in the new order. If a view asks for the code
+     * while it's still waiting to be generated, see {@link #prioritize(String)}.
+     *
+     * @param qrCodeData the encoded LevelUp code.
+     */
+    public void preCacheLevelUpCode(String qrCodeData) {
+        mIsPreCaching = true;
+
+        try {
+            loadLevelUpCode(qrCodeData);
+        } finally {
+            mIsPreCaching = false;
+        }
+
+        moveToBackOfPreCacheQueue(qrCodeData);
+    }
+
+    /**
+     * Loads a set of codes into the cache at pre-cache priority, in order, and hands them back
+     * together. The pool generates one code per core at a time, so the whole set takes about as
+     * long as one code per core. Codes that are already cached are handed back as they are, and
+     * codes that are already being generated aren't generated again. The queue is re-ordered the
+     * same way as by {@link #preCacheLevelUpCode(String)}.
+     *
+     * @param qrCodeData the encoded LevelUp codes.
+     * @param listener called on the main thread once every code of the set has loaded, or
+     *        {@code null}.
+     */
+    public void preCacheLevelUpCodes(String[] qrCodeData,
+            @Nullable OnCodeSetLoadedListener listener) {
+        if (listener == null) {
+            for (String code : qrCodeData) {
+                preCacheLevelUpCode(code);
+            }
+
+            return;
+        }
+
+        CodeSet codeSet = new CodeSet(qrCodeData, listener);
+
+        for (int i = 0; i < qrCodeData.length; i++) {
+            PendingImage<LevelUpQrCodeImage> pendingImage;
+            mIsPreCaching = true;
+
+            try {
+                pendingImage = getLevelUpCode(qrCodeData[i], codeSet.newOnImageLoaded(i));
+            } finally {
+                mIsPreCaching = false;
+            }
+
+            if (pendingImage.isLoaded()) {
+                // It was in the cache.
+                codeSet.onImageLoaded(i, pendingImage.getResult());
+            } else {
+                moveToBackOfPreCacheQueue(qrCodeData[i]);
+            }
+        }
+
+        codeSet.onStarted();
+    }
+
+    /**
+     * Stops every load that's only pre-caching, for example because the payment token the codes
+     * were encoded with is no longer valid. Their codes won't be put in the cache. Loads a view is
+     * waiting on are left alone; the view cancels them itself when its code changes.
+     */
+    public void cancelPreCaching() {
+        for (CodeLoadTask task : new ArrayList<CodeLoadTask>(mTasks.values())) {
+            if (task.isPreCacheOnly()) {
+                task.mIsCancelled = true;
+                mTasks.remove(task.mQrCodeData);
+                EXECUTOR.remove(task);
+
+                // Let the base class forget the loads.
+                for (Waiter waiter : task.mWaiters) {
+                    mTasksByKey.remove(waiter.mKey);
+                    waiter.mOnImageLoaded.onImageLoaded(waiter.mKey, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves a code that's waiting at pre-cache priority to the front of the queue. This should be
+     * called when a code is about to be displayed, as the view may end up waiting on a load that
+     * was started by {@link #preCacheLevelUpCode(String)}.
+     *
+     * @param qrCodeData the encoded LevelUp code.
+     */
+    public void prioritize(String qrCodeData) {
+        CodeLoadTask task = mTasks.get(qrCodeData);
+
+        if (task != null) {
+            raisePriority(task, PRIORITY_VISIBLE);
+            onVisibleTaskRequested(task);
+        }
+    }
+
+    @Override
+    protected void onStartLoadInBackground(String qrCodeData, String key,
+            OnImageLoaded<LevelUpQrCodeImage> onImageLoaded) {
+        int priority = mIsPreCaching ? PRIORITY_PRE_CACHE : PRIORITY_VISIBLE;
+        CodeLoadTask task = mTasks.get(qrCodeData);
+
+        if (task == null) {
+            task = new CodeLoadTask(qrCodeData, priority);
+            mTasks.put(qrCodeData, task);
+            task.mWaiters.add(new Waiter(key, onImageLoaded, mIsPreCaching));
+            EXECUTOR.execute(task);
+        } else {
+            // Join the generation that's already in flight.
+            task.mWaiters.add(new Waiter(key, onImageLoaded, mIsPreCaching));
+            raisePriority(task, priority);
+        }
+
+        mTasksByKey.put(key, task);
+
+        if (priority == PRIORITY_VISIBLE) {
+            onVisibleTaskRequested(task);
+        }
+    }
+
+    @Override
+    protected void onCancelLoad(String key) {
+        CodeLoadTask task = mTasksByKey.get(key);
+
+        if (task == null) {
+            return;
+        }
+
+        // Several loads can share a key; only one of them is being cancelled.
+        if (!task.removeWaiter(key)) {
+            mTasksByKey.remove(key);
+        }
+
+        // Only stop the generation once nobody is waiting on it.
+        if (task.mWaiters.isEmpty()) {
+            task.mIsCancelled = true;
+            mTasks.remove(task.mQrCodeData);
+            EXECUTOR.remove(task);
+
+            if (mLatestVisibleTask == task) {
+                mLatestVisibleTask = null;
+            }
+        }
+    }
+
+    /**
+     * Moves a code that's waiting at pre-cache priority behind the other codes that are waiting.
+     *
+     * @param qrCodeData the encoded LevelUp code.
+     */
+    private void moveToBackOfPreCacheQueue(String qrCodeData) {
+        CodeLoadTask task = mTasks.get(qrCodeData);
+
+        if (task != null && task.mPriority == PRIORITY_PRE_CACHE && EXECUTOR.remove(task)) {
+            task.mSequence = SEQUENCE.getAndIncrement();
+            EXECUTOR.execute(task);
+        }
+    }
+
+    /**
+     * Makes {@code task} the latest visible code, demoting the previous one if it hasn't started
+     * yet. The latest request wins: a code that has been superseded shouldn't hold up the one
+     * that's actually going to be displayed.
+     *
+     * @param task the task for the code that was just requested.
+     */
+    private void onVisibleTaskRequested(CodeLoadTask task) {
+        CodeLoadTask previousTask = mLatestVisibleTask;
+        mLatestVisibleTask = task;
+
+        if (previousTask != null && previousTask != task
+                && previousTask.mPriority == PRIORITY_VISIBLE && EXECUTOR.remove(previousTask)) {
+            previousTask.mPriority = PRIORITY_PRE_CACHE;
+            EXECUTOR.execute(previousTask);
+        }
+    }
+
+    /**
+     * Raises the priority of a task if it's still queued.
+     *
+     * @param task the task.
+     * @param priority the new priority. Nothing happens if this is lower than the current one.
+     */
+    private static void raisePriority(CodeLoadTask task, int priority) {
+        // The queue's order can't change while the task is in it.
+        if (task.mPriority < priority && EXECUTOR.remove(task)) {
+            task.mPriority = priority;
+            EXECUTOR.execute(task);
+        }
+    }
+
+    /**
+     * Delivers a loaded code to everyone waiting on it. Runs on the main thread.
+     *
+     * @param task the task that loaded the code.
+     * @param image the code at its original size, or {@code null} if it couldn't be generated.
+     * @param displayImage the code to hand out: {@code image} or its scaled copy.
+     * @param isCached true if the code came from the backing cache of {@link #mDisplayCodeCache}.
+     */
+    private void onTaskFinished(CodeLoadTask task, @Nullable LevelUpQrCodeImage image,
+            @Nullable LevelUpQrCodeImage displayImage, boolean isCached) {
+        if (task.mIsCancelled || mTasks.get(task.mQrCodeData) != task) {
+            return;
+        }
+
+        mTasks.remove(task.mQrCodeData);
+
+        if (mLatestVisibleTask == task) {
+            mLatestVisibleTask = null;
+        }
+
+        boolean isDelivering = mDisplayCodeCache != null && image != null;
+
+        if (isDelivering) {
+            mDisplayCodeCache.beginDelivery(task.mQrCodeData, image, displayImage, isCached);
+        }
+
+        try {
+            for (Waiter waiter : task.mWaiters) {
+                mTasksByKey.remove(waiter.mKey);
+                waiter.mOnImageLoaded.onImageLoaded(waiter.mKey, displayImage);
+            }
+        } finally {
+            if (isDelivering) {
+                mDisplayCodeCache.endDelivery();
+            }
+        }
+    }
+
+    /**
+     * @return a pool with one thread per core that runs the highest priority tasks first.
+     */
+    private static ThreadPoolExecutor newExecutor() {
+        int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+        return new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread =
+                                new Thread(r, "PrioritizedCodeLoader #" + mCount.incrementAndGet());
+                        thread.setDaemon(true);
+
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Callback for {@link PrioritizedCodeLoader#preCacheLevelUpCodes(String[],
+     * OnCodeSetLoadedListener)}.
+     */
+    public interface OnCodeSetLoadedListener {
+
+        /**
+         * Called on the main thread once every code of a set has loaded.
+         *
+         * @param qrCodeData the encoded LevelUp codes of the set.
+         * @param images the codes, in the same order as {@code qrCodeData}. An element is
+         *        {@code null} if its code couldn't be generated or its load was cancelled, such
+         *        as by {@link PrioritizedCodeLoader#cancelPreCaching()}.
+         */
+        void onCodeSetLoaded(String[] qrCodeData, LevelUpQrCodeImage[] images);
+    }
+
+    /**
+     * Collects the codes of a set as they load. Only accessed on the main thread.
+     */
+    private static final class CodeSet {
+        private final String[] mQrCodeData;
+        private final OnCodeSetLoadedListener mListener;
+        private final LevelUpQrCodeImage[] mImages;
+
+        /**
+         * Which elements of {@link #mImages} have loaded.
+         */
+        private final boolean[] mIsLoaded;
+
+        private int mLoadedCount;
+
+        /**
+         * Set once every load of the set has been started, so that codes that load straight away
+         * don't finish the set early.
+         */
+        private boolean mIsStarted;
+
+        public CodeSet(String[] qrCodeData, OnCodeSetLoadedListener listener) {
+            mQrCodeData = qrCodeData;
+            mListener = listener;
+            mImages = new LevelUpQrCodeImage[qrCodeData.length];
+            mIsLoaded = new boolean[qrCodeData.length];
+        }
+
+        /**
+         * @param index the index of a code in the set.
+         * @return a callback that records the code's image.
+         */
+        public OnImageLoaded<LevelUpQrCodeImage> newOnImageLoaded(final int index) {
+            return new OnImageLoaded<LevelUpQrCodeImage>() {
+                @Override
+                public void onImageLoaded(String loadKey, LevelUpQrCodeImage image) {
+                    CodeSet.this.onImageLoaded(index, image);
+                }
+            };
+        }
+
+        /**
+         * @param index the index of a code in the set.
+         * @param image the code, or {@code null} if it couldn't be loaded.
+         */
+        public void onImageLoaded(int index, @Nullable LevelUpQrCodeImage image) {
+            if (mIsLoaded[index]) {
+                return;
+            }
+
+            mIsLoaded[index] = true;
+            mImages[index] = image;
+            mLoadedCount++;
+            dispatchIfDone();
+        }
+
+        /**
+         * Called once every load of the set has been started.
+         */
+        public void onStarted() {
+            mIsStarted = true;
+            dispatchIfDone();
+        }
+
+        private void dispatchIfDone() {
+            if (mIsStarted && mLoadedCount == mImages.length) {
+                mListener.onCodeSetLoaded(mQrCodeData, mImages);
+            }
+        }
+    }
+
+    /**
+     * A load that's waiting on a generation.
+     */
+    private static final class Waiter {
+        private final String mKey;
+        private final OnImageLoaded<LevelUpQrCodeImage> mOnImageLoaded;
+
+        /**
+         * True if the load was started by {@link #preCacheLevelUpCode(String)}.
+         */
+        private final boolean mIsPreCache;
+
+        public Waiter(String key, OnImageLoaded<LevelUpQrCodeImage> onImageLoaded,
+                boolean isPreCache) {
+            mKey = key;
+            mOnImageLoaded = onImageLoaded;
+            mIsPreCache = isPreCache;
+        }
+    }
+
+    /**
+     * Generates one code for one or more waiters. Tasks are ordered in the pool's queue by
+     * priority, then by the order they were created in.
+     */
+    private final class CodeLoadTask implements Runnable, Comparable<CodeLoadTask> {
+        private final String mQrCodeData;
+
+        /**
+         * Only changed while the task isn't queued.
+         */
+        private volatile int mPriority;
+
+        /**
+         * Only changed while the task isn't queued.
+         */
+        private volatile long mSequence = SEQUENCE.getAndIncrement();
+
+        /**
+         * Only accessed on the main thread.
+         */
+        private final ArrayList<Waiter> mWaiters = new ArrayList<Waiter>(1);
+
+        private volatile boolean mIsCancelled;
+
+        public CodeLoadTask(String qrCodeData, int priority) {
+            mQrCodeData = qrCodeData;
+            mPriority = priority;
+        }
+
+        @Override
+        public int compareTo(CodeLoadTask another) {
+            if (mPriority != another.mPriority) {
+                return mPriority > another.mPriority ? -1 : 1;
+            }
+
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+
+        /**
+         * @return true if only pre-cache loads are waiting on this task.
+         */
+        public boolean isPreCacheOnly() {
+            for (Waiter waiter : mWaiters) {
+                if (!waiter.mIsPreCache) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Removes the first waiter with the given key. Only the key of a cancelled load is known,
+         * so when several loads share a key, the oldest is removed; the others still get the code.
+         *
+         * @param key the load key of the waiter to remove.
+         * @return true if another waiter with the same key is still waiting.
+         */
+        public boolean removeWaiter(String key) {
+            boolean isRemoved = false;
+
+            for (int i = 0; i < mWaiters.size(); i++) {
+                if (mWaiters.get(i).mKey.equals(key)) {
+                    if (isRemoved) {
+                        return true;
+                    }
+
+                    mWaiters.remove(i--);
+                    isRemoved = true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public void run() {
+            if (mIsCancelled) {
+                return;
+            }
+
+            if (mPriority == PRIORITY_VISIBLE) {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT);
+            } else {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            }
+
+            LevelUpQrCodeImage loadedImage = null;
+
+            if (mDisplayCodeCache != null) {
+                loadedImage = mDisplayCodeCache.getOriginalCode(mQrCodeData);
+            }
+
+            final boolean isCached = loadedImage != null;
+
+            if (!isCached) {
+                loadedImage = mQrCodeGenerator.generateLevelUpQrCode(mQrCodeData);
+            }
+
+            final LevelUpQrCodeImage image = loadedImage;
+            LevelUpQrCodeImage scaledImage = image;
+
+            // Pre-cached codes aren't scaled until they're displayed.
+            if (image != null && mPriority == PRIORITY_VISIBLE && mDisplayCodeCache != null) {
+                scaledImage = mDisplayCodeCache.createDisplayImage(image);
+            }
+
+            final LevelUpQrCodeImage displayImage = scaledImage;
+
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onTaskFinished(CodeLoadTask.this, image, displayImage, isCached);
+                }
+            });
+        }
+    }
+}
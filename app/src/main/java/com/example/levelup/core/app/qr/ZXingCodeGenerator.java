@@ -22,19 +22,118 @@ import com.scvngr.levelup.core.ui.view.LevelUpQrCodeGenerator;
 import com.scvngr.levelup.core.util.LogManager;
 
 import com.example.levelup.core.app.Constants;
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.MultiFormatWriter;
+import com.example.levelup.core.qr.ByteRaster;
+import com.example.levelup.core.qr.IntRaster;
+import com.example.levelup.core.qr.QrCodeMatrix;
+import com.example.levelup.core.qr.QrCodeRenderer;
 import com.google.zxing.WriterException;
-import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
-import com.google.zxing.qrcode.encoder.Encoder;
-import com.google.zxing.qrcode.encoder.QRCode;
+
+import java.nio.ByteBuffer;
 
 /**
- * Generates LevelUp QR codes using the included ZXing library.
+ * Generates LevelUp QR codes using the included ZXing library. The codes are encoded and
+ * rasterized by the platform-neutral {@link QrCodeRenderer}; this class only turns its rasters into
+ * bitmaps.
  */
 public final class ZXingCodeGenerator implements LevelUpQrCodeGenerator {
 
+    /**
+     * Encodes at {@link com.google.zxing.qrcode.decoder.ErrorCorrectionLevel#L} with the standard
+     * quiet zone.
+     */
+    private static final QrCodeRenderer RENDERER = new QrCodeRenderer();
+
+    /**
+     * Black modules on a white background.
+     */
+    private static final int[] PALETTE_BLACK_ON_WHITE = new int[] { Color.WHITE, Color.BLACK };
+
+    /**
+     * Opaque modules on a transparent background, for {@link Bitmap.Config#ALPHA_8} output.
+     */
+    private static final byte[] PALETTE_ALPHA = new byte[] { 0, (byte) 0xff };
+
+    /**
+     * Per-thread scratch rasters, used when {@link #mIsReusingBuffers} is set.
+     */
+    private static final ThreadLocal<ScratchBuffers> SCRATCH_BUFFERS =
+            new ThreadLocal<ScratchBuffers>() {
+                @Override
+                protected ScratchBuffers initialValue() {
+                    return new ScratchBuffers();
+                }
+            };
+
+    /**
+     * The config of the generated bitmaps.
+     */
+    private final Bitmap.Config mOutputConfig;
+
+    /**
+     * If true, the intermediate pixel buffer is reused between codes on the same thread.
+     */
+    private final boolean mIsReusingBuffers;
+
+    /**
+     * Where the output bitmaps come from, or {@code null} to always allocate new ones.
+     */
+    @Nullable
+    private final BitmapPool mBitmapPool;
+
+    /**
+     * Creates a generator that outputs {@link Bitmap.Config#RGB_565} bitmaps and allocates fresh
+     * buffers for every code.
+     */
+    public ZXingCodeGenerator() {
+        this(false);
+    }
+
+    /**
+     * Creates a generator that outputs {@link Bitmap.Config#RGB_565} bitmaps.
+     * 
+     * @param isReusingBuffers if true, the intermediate pixel buffer is kept per thread and reused
+     *        for every code generated on that thread, so that generating a series of codes (such
+     *        as when pre-caching tips) doesn't leave a trail of garbage behind it. The buffer stays
+     *        allocated for the life of the thread, so this is best used from a small, long-lived
+     *        pool of background threads.
+     */
+    public ZXingCodeGenerator(boolean isReusingBuffers) {
+        this(Bitmap.Config.RGB_565, isReusingBuffers);
+    }
+
+    /**
+     * @param outputConfig either {@link Bitmap.Config#RGB_565}, for black-on-white bitmaps, or
+     *        {@link Bitmap.Config#ALPHA_8}, for bitmaps that only hold the dark modules as opaque
+     *        pixels. The latter take half the memory, but are transparent where the code is white,
+     *        so they must be drawn over a white background. They are tinted by the paint color they
+     *        are drawn with.
+     * @param isReusingBuffers if true, the intermediate pixel buffer is kept per thread and reused.
+     *        See {@link #ZXingCodeGenerator(boolean)}.
+     */
+    public ZXingCodeGenerator(Bitmap.Config outputConfig, boolean isReusingBuffers) {
+        this(outputConfig, isReusingBuffers, null);
+    }
+
+    /**
+     * @param outputConfig either {@link Bitmap.Config#RGB_565} or {@link Bitmap.Config#ALPHA_8}.
+     *        See {@link #ZXingCodeGenerator(Bitmap.Config, boolean)}.
+     * @param isReusingBuffers if true, the intermediate pixel buffer is kept per thread and reused.
+     *        See {@link #ZXingCodeGenerator(boolean)}.
+     * @param bitmapPool the pool to take the output bitmaps from, or {@code null} to allocate a
+     *        new bitmap for every code. The generated bitmaps are mutable either way; callers are
+     *        responsible for giving them back to the pool once they're no longer drawn.
+     */
+    public ZXingCodeGenerator(Bitmap.Config outputConfig, boolean isReusingBuffers,
+            @Nullable BitmapPool bitmapPool) {
+        if (outputConfig != Bitmap.Config.RGB_565 && outputConfig != Bitmap.Config.ALPHA_8) {
+            throw new IllegalArgumentException("Unsupported output config " + outputConfig);
+        }
+
+        mOutputConfig = outputConfig;
+        mIsReusingBuffers = isReusingBuffers;
+        mBitmapPool = bitmapPool;
+    }
+
     @Override
     @Nullable
     public LevelUpQrCodeImage generateLevelUpQrCode(String qrCodeDataString) {
@@ -57,72 +156,104 @@ public final class ZXingCodeGenerator implements LevelUpQrCodeGenerator {
      * Generate a QR code from a given string (using the ZXing default encoding, ISO-8859-1).
      * 
      * @param qrCodeDataString String to encode.
-     * @return an immutable bitmap of the QR code that was generated.
+     * @return a bitmap of the QR code that was generated. It must not be modified.
      * @throws WriterException if there was a problem generating the bitmap
      */
-    private static LevelUpQrCodeImage getQrCodeBitmapOrThrow(String qrCodeDataString)
+    private LevelUpQrCodeImage getQrCodeBitmapOrThrow(String qrCodeDataString)
             throws WriterException {
-        MultiFormatWriter writer = new MultiFormatWriter();
-
         /*
-         * We end up encoding the QR twice, first encode the string and get the minimum size we can
-         * store the result in. Once we have the proper size, we can then generate the minimal
-         * bitmap that can be scaled on the code screen. This allows us to reduce the in-memory size
-         * of the QR cache significantly.
+         * The string is only encoded once. The resulting module matrix is already the minimal
+         * representation of the code, so it's rendered directly (one pixel per module, surrounded
+         * by the quiet zone) rather than asking a Writer to encode it again at that size. This
+         * keeps the in-memory size of the QR cache small.
          */
-        QRCode code = Encoder.encode(qrCodeDataString, ErrorCorrectionLevel.L);
-        BitMatrix result =
-                writer.encode(qrCodeDataString, BarcodeFormat.QR_CODE, code.getMatrix().getHeight(),
-                        code.getMatrix().getWidth(), null);
-        int width = result.getWidth();
-        int height = result.getHeight();
-        int[] pixels = new int[width * height];
-
-        // All are 0, or black, by default.
-        // The output bitmap is rotated 180° from the input.
-        for (int y = 0; y < height; y++) {
-            int offset = y * width;
-            for (int x = 0; x < width; x++) {
-                if (result.get(x, y)) {
-                    pixels[width * height - 1 - (offset + x)] = Color.BLACK;
-                } else {
-                    pixels[width * height - 1 - (offset + x)] = Color.WHITE;
-                }
-            }
+        QrCodeMatrix matrix = RENDERER.encode(qrCodeDataString);
+        Bitmap bitmap;
+
+        if (mOutputConfig == Bitmap.Config.ALPHA_8) {
+            bitmap = createAlphaBitmap(matrix);
+        } else {
+            bitmap = createRgbBitmap(matrix);
         }
 
-        // The return is [x,y].
-        int[] topLeft = result.getTopLeftOnBit();
+        return new LevelUpQrCodeImage(bitmap, matrix.getTargetSize(),
+                RENDERER.getQuietZoneSize());
+    }
 
-        /*
-         * The target size should be a constant, but ZXing doesn't expose it anywhere, so it's
-         * computed from the result. However, one can safely assume that targets in a given image
-         * are all the same size and square.
-         */
-        int targetSize = 0;
+    /**
+     * @param matrix the module matrix.
+     * @return an {@link Bitmap.Config#RGB_565} bitmap of the code. It's never written to after
+     *         this returns.
+     */
+    private Bitmap createRgbBitmap(QrCodeMatrix matrix) {
+        IntRaster raster;
 
-        /*
-         * The code margin should be the same on all sides, but just to be safe we use the computed
-         * value when computing the target size.
-         */
-        int codeMargin = topLeft[0];
-        int topMargin = topLeft[1];
-
-        // Start at the top left "on" bit, then scan for the first "off" bit.
-        for (int x = codeMargin; x < width; x++) {
-            if (!result.get(x, topMargin)) {
-                targetSize = x - codeMargin;
-                break;
-            }
+        if (mIsReusingBuffers) {
+            raster = SCRATCH_BUFFERS.get().mRaster;
+        } else {
+            raster = new IntRaster();
         }
 
-        /*
-         * This returns an immutable bitmap, which is important for thread safety.
-         */
-        LevelUpQrCodeImage codeBitmap =
-                new LevelUpQrCodeImage(Bitmap.createBitmap(pixels, width, height,
-                        Bitmap.Config.RGB_565), targetSize, codeMargin);
+        RENDERER.render(matrix, raster, PALETTE_BLACK_ON_WHITE);
+
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        Bitmap bitmap = obtainBitmap(width, height, Bitmap.Config.RGB_565);
+        bitmap.setPixels(raster.getPixels(), 0, raster.getStride(), 0, 0, width, height);
 
-        return codeBitmap;
+        return bitmap;
+    }
+
+    /**
+     * Renders the code straight into an {@link Bitmap.Config#ALPHA_8} bitmap's byte layout, so
+     * there is no four-byte-per-pixel intermediate buffer.
+     * 
+     * @param matrix the module matrix.
+     * @return an {@link Bitmap.Config#ALPHA_8} bitmap of the code. The bitmap is technically
+     *         mutable, as there's no way to fill an immutable one from a byte buffer, but it's
+     *         never written to after this returns.
+     */
+    private Bitmap createAlphaBitmap(QrCodeMatrix matrix) {
+        int width = RENDERER.getRasterWidth(matrix);
+        int height = RENDERER.getRasterHeight(matrix);
+        Bitmap bitmap = obtainBitmap(width, height, Bitmap.Config.ALPHA_8);
+        ByteRaster raster;
+
+        if (mIsReusingBuffers) {
+            raster = SCRATCH_BUFFERS.get().mAlphaRaster;
+        } else {
+            raster = new ByteRaster();
+        }
+
+        // Rows may be padded, so lay the raster out the way the bitmap does.
+        int stride = bitmap.getRowBytes();
+        RENDERER.render(matrix, raster, stride, PALETTE_ALPHA);
+        bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(raster.getPixels(), 0, stride * height));
+
+        return bitmap;
+    }
+
+    /**
+     * @param width the width of the bitmap.
+     * @param height the height of the bitmap.
+     * @param config the config of the bitmap.
+     * @return a mutable bitmap from the pool if there is one, otherwise a new one. Its pixels are
+     *         undefined, so every one of them must be written.
+     */
+    private Bitmap obtainBitmap(int width, int height, Bitmap.Config config) {
+        if (mBitmapPool != null) {
+            return mBitmapPool.getOrCreate(width, height, config);
+        }
+
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * A thread's reusable rasters. Codes for the same payment token are almost always the same
+     * size, so these rarely need to grow.
+     */
+    private static final class ScratchBuffers {
+        private final IntRaster mRaster = new IntRaster();
+        private final ByteRaster mAlphaRaster = new ByteRaster();
     }
 }
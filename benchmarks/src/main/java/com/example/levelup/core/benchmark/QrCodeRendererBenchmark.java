@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.benchmark;
+
+import com.example.levelup.core.qr.ByteRaster;
+import com.example.levelup.core.qr.IntRaster;
+import com.example.levelup.core.qr.QrCodeMatrix;
+import com.example.levelup.core.qr.QrCodeRenderer;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Benchmarks the encode and raster path of {@code ZXingCodeGenerator}, as implemented by
+ * {@link QrCodeRenderer}. Each stage is measured on its own as well as end to end, across the
+ * shortest and longest payment tokens, every allowed tip, several colors and both error correction
+ * levels the app could reasonably use.
+ * </p>
+ * <p>
+ * That's a lot of combinations, so the warmup is kept short; the encoder is small and reaches a
+ * steady state quickly. Narrow the sweep with JMH's {@code -p} option, for example
+ * {@code -Pjmh='QrCodeRendererBenchmark -p tip=15 -p color=0'}.
+ * </p>
+ * <p>
+ * The rasters are reused between invocations, the way the generator reuses them when pre-caching,
+ * except in {@link #encodeAndRenderRgbUnpooled()}, which allocates a new raster for every code like
+ * the generator's default. Run with the gc profiler to see the bytes allocated per code; see
+ * {@code benchmarks/build.gradle}.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1)
+public class QrCodeRendererBenchmark {
+
+    /**
+     * Black modules on a white background, as ARGB.
+     */
+    private static final int[] PALETTE_BLACK_ON_WHITE = new int[] { 0xffffffff, 0xff000000 };
+
+    /**
+     * Opaque modules on a transparent background.
+     */
+    private static final byte[] PALETTE_ALPHA = new byte[] { 0, (byte) 0xff };
+
+    /**
+     * The length of the payment token, in characters.
+     */
+    @Param({ "24", "48" })
+    public int tokenLength;
+
+    /**
+     * One of {@link SyntheticLevelUpCodes#ALLOWED_TIPS}.
+     */
+    @Param({ "0", "5", "10", "15", "20", "25" })
+    public int tip;
+
+    /**
+     * The color index.
+     */
+    @Param({ "0", "4", "9" })
+    public int color;
+
+    /**
+     * The name of the {@link ErrorCorrectionLevel}.
+     */
+    @Param({ "L", "M" })
+    public String errorCorrectionLevel;
+
+    private QrCodeRenderer mRenderer;
+
+    private String mPayload;
+
+    private QrCodeMatrix mMatrix;
+
+    private final IntRaster mRaster = new IntRaster();
+
+    private final ByteRaster mAlphaRaster = new ByteRaster();
+
+    @Setup
+    public void setUp() throws WriterException {
+        mRenderer =
+                new QrCodeRenderer(ErrorCorrectionLevel.valueOf(errorCorrectionLevel),
+                        QrCodeRenderer.DEFAULT_QUIET_ZONE_SIZE);
+        mPayload =
+                SyntheticLevelUpCodes.encode(
+                        SyntheticLevelUpCodes.newPaymentToken(tokenLength, tokenLength), color,
+                        tip);
+        mMatrix = mRenderer.encode(mPayload);
+
+        // Size the rasters up front so that the first iteration doesn't pay for it.
+        mRenderer.render(mMatrix, mRaster, PALETTE_BLACK_ON_WHITE);
+        mRenderer.render(mMatrix, mAlphaRaster, getAlphaStride(), PALETTE_ALPHA);
+    }
+
+    /**
+     * Payload to module matrix.
+     *
+     * @return the matrix.
+     * @throws WriterException if the payload couldn't be encoded.
+     */
+    @Benchmark
+    public QrCodeMatrix encode() throws WriterException {
+        return mRenderer.encode(mPayload);
+    }
+
+    /**
+     * Module matrix to color raster.
+     *
+     * @return the raster.
+     */
+    @Benchmark
+    public IntRaster renderRgb() {
+        mRenderer.render(mMatrix, mRaster, PALETTE_BLACK_ON_WHITE);
+
+        return mRaster;
+    }
+
+    /**
+     * Module matrix to alpha raster, with rows padded the way an ALPHA_8 bitmap pads them.
+     *
+     * @return the raster.
+     */
+    @Benchmark
+    public ByteRaster renderAlpha() {
+        mRenderer.render(mMatrix, mAlphaRaster, getAlphaStride(), PALETTE_ALPHA);
+
+        return mAlphaRaster;
+    }
+
+    /**
+     * Payload to color raster, reusing the raster.
+     *
+     * @return the raster.
+     * @throws WriterException if the payload couldn't be encoded.
+     */
+    @Benchmark
+    public IntRaster encodeAndRenderRgb() throws WriterException {
+        mRenderer.render(mRenderer.encode(mPayload), mRaster, PALETTE_BLACK_ON_WHITE);
+
+        return mRaster;
+    }
+
+    /**
+     * Payload to color raster, with a new raster every time.
+     *
+     * @return the raster.
+     * @throws WriterException if the payload couldn't be encoded.
+     */
+    @Benchmark
+    public IntRaster encodeAndRenderRgbUnpooled() throws WriterException {
+        IntRaster raster = new IntRaster();
+        mRenderer.render(mRenderer.encode(mPayload), raster, PALETTE_BLACK_ON_WHITE);
+
+        return raster;
+    }
+
+    /**
+     * @return the row stride of an ALPHA_8 bitmap as wide as the code, which Android aligns to
+     *         four bytes.
+     */
+    private int getAlphaStride() {
+        return (mRenderer.getRasterWidth(mMatrix) + 3) & ~3;
+    }
+}
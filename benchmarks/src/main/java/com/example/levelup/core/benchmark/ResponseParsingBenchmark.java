@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.benchmark;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Benchmarks the parsing stage of {@code RequestLoader#loadInBackground()} by replaying response
+ * bodies through it: the body is decoded into a String, as {@code LevelUpResponse#getData()}
+ * does, then parsed into an {@code org.json} tree, which the model or error factory reads. Each
+ * stage is measured on its own as well as together; with the gc profiler, the latter gives the
+ * bytes allocated per response.
+ * </p>
+ * <p>
+ * The LevelUp SDK's model factories build {@code Parcelable} models and can't run on a desktop
+ * JVM. For error arrays, {@link #readModel()} reads the same fields that
+ * {@code ErrorJsonFactory#fromList} does; for models, it visits every value in the tree, which
+ * is an upper bound on what a factory reads.
+ * </p>
+ * <p>
+ * {@link #streamModel()} and {@link #streamResponse()} measure the streaming path that
+ * {@code RequestLoader} takes on API 11 and up, where the model is read straight from a
+ * {@link JsonReader} without a tree. They use Gson's {@link JsonReader}, which has the same API
+ * and implementation as {@code android.util.JsonReader}, and read the same values as
+ * {@link #readModel()}.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ResponseParsingBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The name of the payload, see {@link ResponsePayloads}. Payloads whose names start with
+     * {@code errors} are error responses.
+     */
+    @Param({ "access_token", "payment_token", "user", "credit_card", "errors", "errors_large" })
+    public String payload;
+
+    private byte[] mBody;
+
+    private String mData;
+
+    private Object mTree;
+
+    private boolean mIsErrorResponse;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        mBody = ResponsePayloads.read(payload);
+        mIsErrorResponse = payload.startsWith("errors");
+        mData = decode();
+        mTree = parseTree();
+    }
+
+    /**
+     * Response body to String.
+     *
+     * @return the body.
+     */
+    @Benchmark
+    public String decode() {
+        return new String(mBody, UTF_8);
+    }
+
+    /**
+     * String to {@code org.json} tree.
+     *
+     * @return the tree.
+     * @throws JSONException if the payload isn't valid JSON.
+     */
+    @Benchmark
+    public Object parseTree() throws JSONException {
+        return parseTree(mData, mIsErrorResponse);
+    }
+
+    /**
+     * {@code org.json} tree to model.
+     *
+     * @return the number of values read.
+     */
+    @Benchmark
+    public int readModel() {
+        return readModel(mTree, mIsErrorResponse);
+    }
+
+    /**
+     * Response body to model: the whole parsing stage of a response.
+     *
+     * @return the number of values read.
+     * @throws JSONException if the payload isn't valid JSON.
+     */
+    @Benchmark
+    public int parseResponse() throws JSONException {
+        return readModel(parseTree(new String(mBody, UTF_8), mIsErrorResponse), mIsErrorResponse);
+    }
+
+    /**
+     * String to model, streamed.
+     *
+     * @return the number of values read.
+     * @throws IOException if the payload isn't valid JSON.
+     */
+    @Benchmark
+    public int streamModel() throws IOException {
+        return streamModel(mData, mIsErrorResponse);
+    }
+
+    /**
+     * Response body to model, streamed: the whole parsing stage of a response on API 11 and up.
+     *
+     * @return the number of values read.
+     * @throws IOException if the payload isn't valid JSON.
+     */
+    @Benchmark
+    public int streamResponse() throws IOException {
+        return streamModel(new String(mBody, UTF_8), mIsErrorResponse);
+    }
+
+    /**
+     * Parses the body the way {@code RequestLoader} does: objects for successful responses,
+     * arrays of errors otherwise.
+     *
+     * @param data the response body.
+     * @param isErrorResponse true if the response is an error.
+     * @return a {@link JSONObject} or a {@link JSONArray}.
+     * @throws JSONException if the payload isn't valid JSON.
+     */
+    private static Object parseTree(String data, boolean isErrorResponse) throws JSONException {
+        if (isErrorResponse) {
+            return new JSONArray(data);
+        }
+
+        return new JSONObject(data);
+    }
+
+    /**
+     * @param tree the parsed body.
+     * @param isErrorResponse true if the response is an error.
+     * @return the number of values read.
+     */
+    private static int readModel(Object tree, boolean isErrorResponse) {
+        if (isErrorResponse) {
+            return readErrors((JSONArray) tree);
+        }
+
+        return visit(tree);
+    }
+
+    /**
+     * Reads the fields of every error in the array, like {@code ErrorJsonFactory#fromList}.
+     *
+     * @param errors the array of errors.
+     * @return the number of values read.
+     */
+    private static int readErrors(JSONArray errors) {
+        int count = 0;
+
+        for (int i = 0, length = errors.length(); i < length; i++) {
+            JSONObject error = (JSONObject) ((JSONObject) errors.opt(i)).opt("error");
+
+            count += error.opt("message") != null ? 1 : 0;
+            count += error.opt("object") != null ? 1 : 0;
+            count += error.opt("property") != null ? 1 : 0;
+        }
+
+        return count;
+    }
+
+    /**
+     * Streams the body the way {@code RequestLoader} does, reading the same values as
+     * {@link #readModel(Object, boolean)}.
+     *
+     * @param data the response body.
+     * @param isErrorResponse true if the response is an error.
+     * @return the number of values read.
+     * @throws IOException if the payload isn't valid JSON.
+     */
+    private static int streamModel(String data, boolean isErrorResponse) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(data));
+
+        try {
+            if (isErrorResponse) {
+                return streamErrors(reader);
+            }
+
+            return streamValue(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the fields of every error in the array, like {@link #readErrors(JSONArray)}.
+     *
+     * @param reader the reader, positioned at the array of errors.
+     * @return the number of values read.
+     * @throws IOException if the payload isn't valid JSON.
+     */
+    private static int streamErrors(JsonReader reader) throws IOException {
+        int count = 0;
+
+        reader.beginArray();
+
+        while (reader.hasNext()) {
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+                if ("error".equals(reader.nextName())) {
+                    reader.beginObject();
+
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+
+                        if ("message".equals(name) || "object".equals(name)
+                                || "property".equals(name)) {
+                            count++;
+                        }
+
+                        if (reader.peek() == JsonToken.STRING) {
+                            reader.nextString();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+        }
+
+        reader.endArray();
+
+        return count;
+    }
+
+    /**
+     * @param reader the reader, positioned at a value.
+     * @return the number of leaf values in the value.
+     * @throws IOException if the payload isn't valid JSON.
+     */
+    private static int streamValue(JsonReader reader) throws IOException {
+        int count = 0;
+
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                reader.beginObject();
+
+                while (reader.hasNext()) {
+                    reader.nextName();
+                    count += streamValue(reader);
+                }
+
+                reader.endObject();
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+
+                while (reader.hasNext()) {
+                    count += streamValue(reader);
+                }
+
+                reader.endArray();
+                break;
+            case BOOLEAN:
+                reader.nextBoolean();
+                count = 1;
+                break;
+            case NULL:
+                reader.nextNull();
+                count = 1;
+                break;
+            default:
+                // Strings and numbers, which are read as strings like the app's parser does.
+                reader.nextString();
+                count = 1;
+                break;
+        }
+
+        return count;
+    }
+
+    /**
+     * @param value a value in the tree.
+     * @return the number of leaf values in {@code value}.
+     */
+    private static int visit(Object value) {
+        int count = 0;
+
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            Iterator<?> keys = object.keys();
+
+            while (keys.hasNext()) {
+                count += visit(object.opt((String) keys.next()));
+            }
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+
+            for (int i = 0, length = array.length(); i < length; i++) {
+                count += visit(array.opt(i));
+            }
+        } else {
+            count = 1;
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Web service response bodies, stored as resources under {@code /payloads}. They have the shape and
+ * size of real responses, with placeholder data. The large error array stands in for a batch of
+ * submissions that fail validation on every field. To benchmark a captured response, drop it in
+ * the directory and add its name to {@link ResponseParsingBenchmark#payload}.
+ */
+final class ResponsePayloads {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private ResponsePayloads() {
+        throw new UnsupportedOperationException("This class is non-instantiable");
+    }
+
+    /**
+     * @param name the name of the payload, without the {@code .json} extension.
+     * @return the raw response body.
+     * @throws IOException if the payload couldn't be read.
+     */
+    static byte[] read(String name) throws IOException {
+        String path = "/payloads/" + name + ".json";
+        InputStream in = ResponsePayloads.class.getResourceAsStream(path);
+
+        if (in == null) {
+            throw new FileNotFoundException(path);
+        }
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.benchmark;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * <p>
+ * Builds synthetic payloads shaped like encoded LevelUp codes. The real encoder,
+ * {@code LevelUpCode#encodeLevelUpCode}, ships in the Android SDK and can't run on a desktop JVM.
+ * </p>
+ * <p>
+ * What matters to the QR encoder is the payload's length and character set, which decide the
+ * encoding mode and the symbol version. Like real codes, these payloads are made of upper case
+ * letters and digits only, so ZXing encodes them in alphanumeric mode. The color and tip are
+ * appended as fixed-width digits, so every tip and color of a token yields a payload of the same
+ * length, as they do in the app.
+ * </p>
+ */
+final class SyntheticLevelUpCodes {
+
+    /**
+     * The tips the sample app offers, see {@code TipSelectorFragment#ALLOWED_TIPS}.
+     */
+    static final int[] ALLOWED_TIPS = new int[] { 0, 5, 10, 15, 20, 25 };
+
+    private static final String TOKEN_ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private SyntheticLevelUpCodes() {
+        throw new UnsupportedOperationException("This class is non-instantiable");
+    }
+
+    /**
+     * @param length the number of characters in the token.
+     * @param seed the seed of the token's characters. The same seed always yields the same token,
+     *        so results are comparable between runs.
+     * @return a payment token of upper case letters and digits.
+     */
+    static String newPaymentToken(int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder token = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++) {
+            token.append(TOKEN_ALPHABET.charAt(random.nextInt(TOKEN_ALPHABET.length())));
+        }
+
+        return token.toString();
+    }
+
+    /**
+     * @param paymentToken the payment token.
+     * @param color the color index, between 0 and 9 inclusive.
+     * @param tipPercentage the tip percentage, between 0 and 999 inclusive.
+     * @return the payload for the token, color and tip.
+     */
+    static String encode(String paymentToken, int color, int tipPercentage) {
+        return String.format(Locale.US, "LU%s%01d%03dLU", paymentToken, color, tipPercentage);
+    }
+}
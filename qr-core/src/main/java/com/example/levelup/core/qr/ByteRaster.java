@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.qr;
+
+/**
+ * A {@link Raster} of 8-bit pixels, such as alpha or luminance values.
+ */
+public final class ByteRaster extends Raster {
+
+    private byte[] mPixels = new byte[0];
+
+    /**
+     * @return the backing array. It may be longer than {@link #getStride()} &times;
+     *         {@link #getHeight()}, and it's replaced whenever the raster grows.
+     */
+    public byte[] getPixels() {
+        return mPixels;
+    }
+
+    @Override
+    void ensureCapacity(int length) {
+        if (mPixels.length < length) {
+            mPixels = new byte[length];
+        }
+    }
+}
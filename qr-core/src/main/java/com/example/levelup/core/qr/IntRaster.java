@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.qr;
+
+/**
+ * A {@link Raster} of 32-bit pixels, such as ARGB colors.
+ */
+public final class IntRaster extends Raster {
+
+    private int[] mPixels = new int[0];
+
+    /**
+     * Resizes the raster so that its rows aren't padded. The contents are undefined afterwards.
+     *
+     * @param width the width, in pixels.
+     * @param height the height, in pixels.
+     */
+    public void setSize(int width, int height) {
+        setSize(width, height, width);
+    }
+
+    /**
+     * @return the backing array. It may be longer than {@link #getStride()} &times;
+     *         {@link #getHeight()}, and it's replaced whenever the raster grows.
+     */
+    public int[] getPixels() {
+        return mPixels;
+    }
+
+    @Override
+    void ensureCapacity(int length) {
+        if (mPixels.length < length) {
+            mPixels = new int[length];
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.qr;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+
+/**
+ * The modules of an encoded QR code, along with the size of its position detection targets.
+ */
+public final class QrCodeMatrix {
+
+    private final ByteMatrix mModules;
+
+    private final int mTargetSize;
+
+    /**
+     * @param modules the module matrix, as produced by ZXing's {@link Encoder}. Each module is 1
+     *        for dark or 0 for light.
+     */
+    public QrCodeMatrix(ByteMatrix modules) {
+        mModules = modules;
+        mTargetSize = computeTargetSize(modules);
+    }
+
+    /**
+     * Encodes a string (using the ZXing default encoding, ISO-8859-1).
+     *
+     * @param data the string to encode.
+     * @param errorCorrectionLevel the error correction level.
+     * @return the encoded matrix.
+     * @throws WriterException if the string couldn't be encoded.
+     */
+    public static QrCodeMatrix encode(String data, ErrorCorrectionLevel errorCorrectionLevel)
+            throws WriterException {
+        return new QrCodeMatrix(Encoder.encode(data, errorCorrectionLevel).getMatrix());
+    }
+
+    /**
+     * @return the module matrix. It must not be modified.
+     */
+    public ByteMatrix getModules() {
+        return mModules;
+    }
+
+    /**
+     * @return the width of the matrix, in modules.
+     */
+    public int getWidth() {
+        return mModules.getWidth();
+    }
+
+    /**
+     * @return the height of the matrix, in modules.
+     */
+    public int getHeight() {
+        return mModules.getHeight();
+    }
+
+    /**
+     * @return the size of the position detection targets, in modules.
+     */
+    public int getTargetSize() {
+        return mTargetSize;
+    }
+
+    /**
+     * The target size should be a constant, but ZXing doesn't expose it anywhere, so it's computed
+     * from the matrix. However, one can safely assume that targets in a given image are all the
+     * same size and square. The top left target always starts at the first module, so this scans
+     * the first row for the first "off" module.
+     *
+     * @param modules the module matrix.
+     * @return the size of the position detection targets, in modules.
+     */
+    private static int computeTargetSize(ByteMatrix modules) {
+        byte[] firstRow = modules.getArray()[0];
+        int targetSize = firstRow.length;
+
+        for (int x = 0; x < firstRow.length; x++) {
+            if (firstRow[x] != 1) {
+                targetSize = x;
+                break;
+            }
+        }
+
+        return targetSize;
+    }
+}
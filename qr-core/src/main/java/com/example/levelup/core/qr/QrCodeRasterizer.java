@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.qr;
+
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Expands a QR module matrix into a raster, one pixel per module. The output is surrounded by a
+ * margin and rotated 180° from the input, which is the orientation that the LevelUp code view
+ * expects.
+ */
+final class QrCodeRasterizer {
+
+    private QrCodeRasterizer() {
+        throw new UnsupportedOperationException("This class is non-instantiable");
+    }
+
+    /**
+     * @param matrix the module matrix.
+     * @param margin the number of modules of quiet zone on each side.
+     * @return the width of the rasterized image, in pixels.
+     */
+    static int getRasterWidth(QrCodeMatrix matrix, int margin) {
+        return matrix.getWidth() + margin * 2;
+    }
+
+    /**
+     * @param matrix the module matrix.
+     * @param margin the number of modules of quiet zone on each side.
+     * @return the height of the rasterized image, in pixels.
+     */
+    static int getRasterHeight(QrCodeMatrix matrix, int margin) {
+        return matrix.getHeight() + margin * 2;
+    }
+
+    /**
+     * Rasterizes the matrix into {@code raster}. Whole rows are read at once from the matrix's
+     * backing array and each module is mapped through a two-entry palette, so there are no
+     * per-module method calls or branches. The 180° rotation is handled by writing each row
+     * backwards, starting from its mirrored position.
+     *
+     * @param matrix the module matrix.
+     * @param margin the number of modules of quiet zone on each side.
+     * @param raster the destination. It must already be {@link #getRasterWidth} &times;
+     *        {@link #getRasterHeight}; any row padding is filled with the light color.
+     * @param palette the colors to use, indexed by module value:
+     *        {@link QrCodeRenderer#PALETTE_INDEX_OFF} for the light modules and the margin,
+     *        {@link QrCodeRenderer#PALETTE_INDEX_ON} for the dark modules.
+     */
+    static void rasterize(QrCodeMatrix matrix, int margin, IntRaster raster, int[] palette) {
+        ByteMatrix modules = matrix.getModules();
+        int matrixWidth = modules.getWidth();
+        int matrixHeight = modules.getHeight();
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int stride = raster.getStride();
+        int[] pixels = raster.getPixels();
+        byte[][] rows = modules.getArray();
+        int offColor = palette[QrCodeRenderer.PALETTE_INDEX_OFF];
+
+        // The top and bottom margins are contiguous.
+        Arrays.fill(pixels, 0, margin * stride, offColor);
+        Arrays.fill(pixels, (height - margin) * stride, height * stride, offColor);
+
+        for (int y = 0; y < matrixHeight; y++) {
+            byte[] row = rows[y];
+            int rowStart = (height - 1 - margin - y) * stride;
+
+            // The right margin of the rotated row, then the left margin and any row padding.
+            Arrays.fill(pixels, rowStart, rowStart + margin, offColor);
+            Arrays.fill(pixels, rowStart + width - margin, rowStart + stride, offColor);
+
+            int dest = rowStart + width - 1 - margin;
+
+            for (int x = 0; x < matrixWidth; x++) {
+                pixels[dest--] = palette[row[x] & 1];
+            }
+        }
+    }
+
+    /**
+     * Rasterizes the matrix into {@code raster}, one byte per pixel. This works the same way as
+     * {@link #rasterize(QrCodeMatrix, int, IntRaster, int[])}, but for single-channel output such
+     * as an alpha mask.
+     *
+     * @param matrix the module matrix.
+     * @param margin the number of modules of quiet zone on each side.
+     * @param raster the destination. It must already be {@link #getRasterWidth} &times;
+     *        {@link #getRasterHeight}; any row padding is filled with the light value.
+     * @param palette the values to use, indexed by module value:
+     *        {@link QrCodeRenderer#PALETTE_INDEX_OFF} for the light modules and the margin,
+     *        {@link QrCodeRenderer#PALETTE_INDEX_ON} for the dark modules.
+     */
+    static void rasterize(QrCodeMatrix matrix, int margin, ByteRaster raster, byte[] palette) {
+        ByteMatrix modules = matrix.getModules();
+        int matrixWidth = modules.getWidth();
+        int matrixHeight = modules.getHeight();
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int stride = raster.getStride();
+        byte[] pixels = raster.getPixels();
+        byte[][] rows = modules.getArray();
+        byte offValue = palette[QrCodeRenderer.PALETTE_INDEX_OFF];
+
+        Arrays.fill(pixels, 0, margin * stride, offValue);
+        Arrays.fill(pixels, (height - margin) * stride, height * stride, offValue);
+
+        for (int y = 0; y < matrixHeight; y++) {
+            byte[] row = rows[y];
+            int rowStart = (height - 1 - margin - y) * stride;
+
+            Arrays.fill(pixels, rowStart, rowStart + margin, offValue);
+            Arrays.fill(pixels, rowStart + width - margin, rowStart + stride, offValue);
+
+            int dest = rowStart + width - 1 - margin;
+
+            for (int x = 0; x < matrixWidth; x++) {
+                pixels[dest--] = palette[row[x] & 1];
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.qr;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+/**
+ * <p>
+ * The QR code rendering pipeline: a payload is encoded into a {@link QrCodeMatrix}, which is then
+ * rasterized into a {@link Raster} at one pixel per module, surrounded by a quiet zone and rotated
+ * 180° for the LevelUp code view. Platforms wrap the raster in their own image type.
+ * </p>
+ * <p>
+ * This only depends on ZXing and the JDK. Instances are immutable and thread safe; rasters are
+ * not, so each thread needs its own.
+ * </p>
+ */
+public final class QrCodeRenderer {
+
+    /**
+     * The default number of modules of white space around the code. This is the same margin ZXing's
+     * {@link com.google.zxing.qrcode.QRCodeWriter} uses and the minimum that the QR specification
+     * allows.
+     */
+    public static final int DEFAULT_QUIET_ZONE_SIZE = 4;
+
+    /**
+     * Index in a palette of the color for "off" (light) modules and the quiet zone.
+     */
+    public static final int PALETTE_INDEX_OFF = 0;
+
+    /**
+     * Index in a palette of the color for "on" (dark) modules.
+     */
+    public static final int PALETTE_INDEX_ON = 1;
+
+    private final ErrorCorrectionLevel mErrorCorrectionLevel;
+
+    private final int mQuietZoneSize;
+
+    /**
+     * Creates a renderer with {@link ErrorCorrectionLevel#L} and a quiet zone of
+     * {@link #DEFAULT_QUIET_ZONE_SIZE}, the settings LevelUp codes are displayed with.
+     */
+    public QrCodeRenderer() {
+        this(ErrorCorrectionLevel.L, DEFAULT_QUIET_ZONE_SIZE);
+    }
+
+    /**
+     * @param errorCorrectionLevel the error correction level to encode with.
+     * @param quietZoneSize the number of modules of white space around the code.
+     */
+    public QrCodeRenderer(ErrorCorrectionLevel errorCorrectionLevel, int quietZoneSize) {
+        if (quietZoneSize < 0) {
+            throw new IllegalArgumentException("quietZoneSize must be non-negative");
+        }
+
+        mErrorCorrectionLevel = errorCorrectionLevel;
+        mQuietZoneSize = quietZoneSize;
+    }
+
+    /**
+     * @return the error correction level codes are encoded with.
+     */
+    public ErrorCorrectionLevel getErrorCorrectionLevel() {
+        return mErrorCorrectionLevel;
+    }
+
+    /**
+     * @return the number of modules of white space around the code.
+     */
+    public int getQuietZoneSize() {
+        return mQuietZoneSize;
+    }
+
+    /**
+     * Encodes a string (using the ZXing default encoding, ISO-8859-1).
+     *
+     * @param data the string to encode.
+     * @return the module matrix.
+     * @throws WriterException if the string couldn't be encoded.
+     */
+    public QrCodeMatrix encode(String data) throws WriterException {
+        return QrCodeMatrix.encode(data, mErrorCorrectionLevel);
+    }
+
+    /**
+     * @param matrix a module matrix.
+     * @return the width of the rendered code, quiet zone included, in pixels.
+     */
+    public int getRasterWidth(QrCodeMatrix matrix) {
+        return QrCodeRasterizer.getRasterWidth(matrix, mQuietZoneSize);
+    }
+
+    /**
+     * @param matrix a module matrix.
+     * @return the height of the rendered code, quiet zone included, in pixels.
+     */
+    public int getRasterHeight(QrCodeMatrix matrix) {
+        return QrCodeRasterizer.getRasterHeight(matrix, mQuietZoneSize);
+    }
+
+    /**
+     * Renders a matrix into a raster of colors. The raster is resized to fit the code, without row
+     * padding.
+     *
+     * @param matrix the module matrix.
+     * @param raster the destination.
+     * @param palette the colors to use, indexed by {@link #PALETTE_INDEX_OFF} and
+     *        {@link #PALETTE_INDEX_ON}.
+     */
+    public void render(QrCodeMatrix matrix, IntRaster raster, int[] palette) {
+        raster.setSize(getRasterWidth(matrix), getRasterHeight(matrix));
+        QrCodeRasterizer.rasterize(matrix, mQuietZoneSize, raster, palette);
+    }
+
+    /**
+     * Renders a matrix into a single-channel raster. The raster is resized to fit the code.
+     *
+     * @param matrix the module matrix.
+     * @param raster the destination.
+     * @param stride the number of bytes between the start of each row, for destinations that pad
+     *        their rows. Must be at least {@link #getRasterWidth(QrCodeMatrix)}.
+     * @param palette the values to use, indexed by {@link #PALETTE_INDEX_OFF} and
+     *        {@link #PALETTE_INDEX_ON}.
+     */
+    public void render(QrCodeMatrix matrix, ByteRaster raster, int stride, byte[] palette) {
+        raster.setSize(getRasterWidth(matrix), getRasterHeight(matrix), stride);
+        QrCodeRasterizer.rasterize(matrix, mQuietZoneSize, raster, palette);
+    }
+}
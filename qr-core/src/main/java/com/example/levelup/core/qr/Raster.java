@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.qr;
+
+import java.util.Locale;
+
+/**
+ * <p>
+ * A rectangular buffer of pixels that a QR code is rendered into. Rows are laid out one after the
+ * other, {@link #getStride()} elements apart; the stride may be larger than the width to match a
+ * destination that pads its rows.
+ * </p>
+ * <p>
+ * A raster can be resized any number of times. Its backing array only grows, so reusing one
+ * raster for a series of codes of the same size allocates nothing after the first.
+ * </p>
+ */
+public abstract class Raster {
+
+    private int mWidth;
+
+    private int mHeight;
+
+    private int mStride;
+
+    /**
+     * Only the rasters in this package can be rendered into.
+     */
+    Raster() {
+        // Package-private constructor.
+    }
+
+    /**
+     * Resizes the raster. The contents are undefined afterwards.
+     *
+     * @param width the width, in pixels.
+     * @param height the height, in pixels.
+     * @param stride the number of elements between the start of each row. Must be at least
+     *        {@code width}.
+     */
+    public final void setSize(int width, int height, int stride) {
+        if (width < 0 || height < 0 || stride < width) {
+            throw new IllegalArgumentException(String.format(Locale.US,
+                    "Invalid raster size %dx%d with stride %d", width, height, stride));
+        }
+
+        ensureCapacity(stride * height);
+        mWidth = width;
+        mHeight = height;
+        mStride = stride;
+    }
+
+    /**
+     * @return the width, in pixels.
+     */
+    public final int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * @return the height, in pixels.
+     */
+    public final int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return the number of elements between the start of each row.
+     */
+    public final int getStride() {
+        return mStride;
+    }
+
+    /**
+     * Grows the backing array if it's shorter than {@code length}.
+     *
+     * @param length the number of elements needed.
+     */
+    abstract void ensureCapacity(int length);
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.qr;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link QrCodeMatrix}.
+ */
+public final class QrCodeMatrixTest {
+
+    @Test
+    public void encode_hasSevenModuleTargets() throws Exception {
+        for (ErrorCorrectionLevel level : ErrorCorrectionLevel.values()) {
+            QrCodeMatrix matrix = QrCodeMatrix.encode(QrCodeTestData.LEVELUP_CODE, level);
+
+            assertEquals(7, matrix.getTargetSize());
+        }
+    }
+
+    @Test
+    public void encode_sizeMatchesVersion() throws Exception {
+        QrCodeMatrix matrix = QrCodeMatrix.encode("a", ErrorCorrectionLevel.L);
+
+        // Version 1 is 21 modules wide.
+        assertEquals(21, matrix.getWidth());
+        assertEquals(21, matrix.getHeight());
+    }
+
+    @Test
+    public void getTargetSize_stopsAtFirstLightModule() {
+        ByteMatrix modules = new ByteMatrix(8, 8);
+        modules.clear((byte) 0);
+
+        for (int x = 0; x < 3; x++) {
+            modules.set(x, 0, 1);
+        }
+
+        // Dark modules further along the row don't count.
+        modules.set(5, 0, 1);
+
+        assertEquals(3, new QrCodeMatrix(modules).getTargetSize());
+    }
+
+    @Test
+    public void getTargetSize_wholeRowDark() {
+        ByteMatrix modules = new ByteMatrix(5, 5);
+        modules.clear((byte) 1);
+
+        assertEquals(5, new QrCodeMatrix(modules).getTargetSize());
+    }
+
+    @Test
+    public void getTargetSize_firstModuleLight() {
+        ByteMatrix modules = new ByteMatrix(5, 5);
+        modules.clear((byte) 0);
+
+        assertEquals(0, new QrCodeMatrix(modules).getTargetSize());
+    }
+}
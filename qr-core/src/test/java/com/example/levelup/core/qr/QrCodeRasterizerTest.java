@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.qr;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Tests {@link QrCodeRasterizer}.
+ */
+public final class QrCodeRasterizerTest {
+
+    /**
+     * The number of elements of padding added to each row in the stride tests.
+     */
+    private static final int ROW_PADDING = 5;
+
+    /**
+     * A value that the rasterizer never writes, to spot pixels that were left alone.
+     */
+    private static final int UNWRITTEN = 0x12345678;
+
+    @Test
+    public void rasterize_intRasterWithStride() throws Exception {
+        int margin = QrCodeRenderer.DEFAULT_QUIET_ZONE_SIZE;
+        QrCodeMatrix matrix =
+                QrCodeMatrix.encode(QrCodeTestData.LEVELUP_CODE, ErrorCorrectionLevel.L);
+        int width = QrCodeRasterizer.getRasterWidth(matrix, margin);
+        int height = QrCodeRasterizer.getRasterHeight(matrix, margin);
+        IntRaster raster = new IntRaster();
+        raster.setSize(width, height, width + ROW_PADDING);
+        Arrays.fill(raster.getPixels(), UNWRITTEN);
+
+        QrCodeRasterizer.rasterize(matrix, margin, raster, QrCodeTestData.INT_PALETTE);
+
+        BitMatrix expected = QrCodeTestData.encodeWithZXing(QrCodeTestData.LEVELUP_CODE, margin);
+        QrCodeTestData.assertMatches(expected, raster, QrCodeTestData.INT_PALETTE);
+
+        // The padding at the end of each row is filled with the light color.
+        int[] pixels = raster.getPixels();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = width; x < raster.getStride(); x++) {
+                assertEquals(QrCodeTestData.INT_PALETTE[QrCodeRenderer.PALETTE_INDEX_OFF],
+                        pixels[y * raster.getStride() + x]);
+            }
+        }
+    }
+
+    @Test
+    public void rasterize_byteRasterWithStride() throws Exception {
+        int margin = QrCodeRenderer.DEFAULT_QUIET_ZONE_SIZE;
+        QrCodeMatrix matrix =
+                QrCodeMatrix.encode(QrCodeTestData.LEVELUP_CODE, ErrorCorrectionLevel.L);
+        int width = QrCodeRasterizer.getRasterWidth(matrix, margin);
+        int height = QrCodeRasterizer.getRasterHeight(matrix, margin);
+        ByteRaster raster = new ByteRaster();
+        raster.setSize(width, height, width + ROW_PADDING);
+        Arrays.fill(raster.getPixels(), (byte) UNWRITTEN);
+
+        QrCodeRasterizer.rasterize(matrix, margin, raster, QrCodeTestData.BYTE_PALETTE);
+
+        BitMatrix expected = QrCodeTestData.encodeWithZXing(QrCodeTestData.LEVELUP_CODE, margin);
+        QrCodeTestData.assertMatches(expected, raster, QrCodeTestData.BYTE_PALETTE);
+
+        byte[] pixels = raster.getPixels();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = width; x < raster.getStride(); x++) {
+                assertEquals(QrCodeTestData.BYTE_PALETTE[QrCodeRenderer.PALETTE_INDEX_OFF],
+                        pixels[y * raster.getStride() + x]);
+            }
+        }
+    }
+
+    @Test
+    public void rasterize_writesOnlyWithinRaster() throws Exception {
+        int margin = 2;
+        QrCodeMatrix matrix = QrCodeMatrix.encode("a", ErrorCorrectionLevel.L);
+        int width = QrCodeRasterizer.getRasterWidth(matrix, margin);
+        int height = QrCodeRasterizer.getRasterHeight(matrix, margin);
+        IntRaster raster = new IntRaster();
+
+        // Leave the backing array larger than the code.
+        raster.setSize(width * 2, height * 2);
+        raster.setSize(width, height, width + ROW_PADDING);
+        Arrays.fill(raster.getPixels(), UNWRITTEN);
+
+        QrCodeRasterizer.rasterize(matrix, margin, raster, QrCodeTestData.INT_PALETTE);
+
+        int[] pixels = raster.getPixels();
+
+        for (int i = raster.getStride() * height; i < pixels.length; i++) {
+            assertEquals(UNWRITTEN, pixels[i]);
+        }
+    }
+
+    @Test
+    public void rasterize_zeroMarginRotatesTargets() throws Exception {
+        QrCodeMatrix matrix = QrCodeMatrix.encode("a", ErrorCorrectionLevel.L);
+        IntRaster raster = new IntRaster();
+        raster.setSize(QrCodeRasterizer.getRasterWidth(matrix, 0),
+                QrCodeRasterizer.getRasterHeight(matrix, 0));
+
+        QrCodeRasterizer.rasterize(matrix, 0, raster, QrCodeTestData.INT_PALETTE);
+
+        /*
+         * The matrix has targets in every corner but the bottom-right one. After the 180°
+         * rotation, the raster's bottom rows start and end with a target, and its top row ends
+         * with one. Each target's outer ring is followed by a light separator.
+         */
+        int targetSize = matrix.getTargetSize();
+        int width = raster.getWidth();
+        int bottomRow = (raster.getHeight() - 1) * width;
+
+        assertRun(raster, width - targetSize, targetSize);
+        assertRun(raster, bottomRow, targetSize);
+        assertRun(raster, bottomRow + width - targetSize, targetSize);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setSize_strideShorterThanWidth() {
+        new ByteRaster().setSize(10, 10, 9);
+    }
+
+    /**
+     * Checks that a row holds a run of dark pixels with a light pixel on the side facing the
+     * middle of the code.
+     *
+     * @param raster the raster, without row padding.
+     * @param start the index of the first pixel of the run.
+     * @param length the length of the run.
+     */
+    private static void assertRun(IntRaster raster, int start, int length) {
+        int off = QrCodeTestData.INT_PALETTE[QrCodeRenderer.PALETTE_INDEX_OFF];
+        int on = QrCodeTestData.INT_PALETTE[QrCodeRenderer.PALETTE_INDEX_ON];
+        int[] pixels = raster.getPixels();
+
+        for (int i = start; i < start + length; i++) {
+            assertEquals("Pixel " + i, on, pixels[i]);
+        }
+
+        boolean isAtRowStart = start % raster.getWidth() == 0;
+        assertEquals(off, pixels[isAtRowStart ? start + length : start - 1]);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.qr;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link QrCodeRenderer}.
+ */
+public final class QrCodeRendererTest {
+
+    @Test
+    public void defaults_matchLevelUpCodes() {
+        QrCodeRenderer renderer = new QrCodeRenderer();
+
+        assertEquals(ErrorCorrectionLevel.L, renderer.getErrorCorrectionLevel());
+        assertEquals(QrCodeRenderer.DEFAULT_QUIET_ZONE_SIZE, renderer.getQuietZoneSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_negativeQuietZone() {
+        new QrCodeRenderer(ErrorCorrectionLevel.L, -1);
+    }
+
+    @Test
+    public void getRasterSize_includesQuietZone() throws Exception {
+        QrCodeRenderer renderer = new QrCodeRenderer(ErrorCorrectionLevel.L, 3);
+        QrCodeMatrix matrix = renderer.encode("a");
+
+        assertEquals(21 + 3 * 2, renderer.getRasterWidth(matrix));
+        assertEquals(21 + 3 * 2, renderer.getRasterHeight(matrix));
+    }
+
+    @Test
+    public void render_quietZoneIsOff() throws Exception {
+        int quietZoneSize = QrCodeRenderer.DEFAULT_QUIET_ZONE_SIZE;
+        QrCodeRenderer renderer = new QrCodeRenderer();
+        QrCodeMatrix matrix = renderer.encode(QrCodeTestData.LEVELUP_CODE);
+        IntRaster raster = new IntRaster();
+        int[] palette = QrCodeTestData.INT_PALETTE;
+
+        renderer.render(matrix, raster, palette);
+
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int[] pixels = raster.getPixels();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean isInQuietZone =
+                        x < quietZoneSize || x >= width - quietZoneSize || y < quietZoneSize
+                                || y >= height - quietZoneSize;
+
+                if (isInQuietZone) {
+                    assertEquals("Pixel " + x + ", " + y,
+                            palette[QrCodeRenderer.PALETTE_INDEX_OFF], pixels[y * width + x]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void render_matchesZXing() throws Exception {
+        for (int quietZoneSize : new int[] { 0, 1, QrCodeRenderer.DEFAULT_QUIET_ZONE_SIZE }) {
+            QrCodeRenderer renderer = new QrCodeRenderer(ErrorCorrectionLevel.L, quietZoneSize);
+
+            for (String data : QrCodeTestData.PAYLOADS) {
+                IntRaster raster = new IntRaster();
+                renderer.render(renderer.encode(data), raster, QrCodeTestData.INT_PALETTE);
+
+                QrCodeTestData.assertMatches(QrCodeTestData.encodeWithZXing(data, quietZoneSize),
+                        raster, QrCodeTestData.INT_PALETTE);
+            }
+        }
+    }
+
+    @Test
+    public void render_byteRasterMatchesZXing() throws Exception {
+        QrCodeRenderer renderer = new QrCodeRenderer();
+
+        for (String data : QrCodeTestData.PAYLOADS) {
+            QrCodeMatrix matrix = renderer.encode(data);
+            ByteRaster raster = new ByteRaster();
+            renderer.render(matrix, raster, renderer.getRasterWidth(matrix),
+                    QrCodeTestData.BYTE_PALETTE);
+
+            QrCodeTestData.assertMatches(QrCodeTestData.encodeWithZXing(data,
+                    QrCodeRenderer.DEFAULT_QUIET_ZONE_SIZE), raster, QrCodeTestData.BYTE_PALETTE);
+        }
+    }
+
+    @Test
+    public void render_reusedRasterMatchesZXing() throws Exception {
+        QrCodeRenderer renderer = new QrCodeRenderer();
+        IntRaster raster = new IntRaster();
+
+        // Largest first, so that the smaller codes are rendered over a dirty, oversized array.
+        for (int i = QrCodeTestData.PAYLOADS.length - 1; i >= 0; i--) {
+            String data = QrCodeTestData.PAYLOADS[i];
+            renderer.render(renderer.encode(data), raster, QrCodeTestData.INT_PALETTE);
+
+            QrCodeTestData.assertMatches(QrCodeTestData.encodeWithZXing(data,
+                    QrCodeRenderer.DEFAULT_QUIET_ZONE_SIZE), raster, QrCodeTestData.INT_PALETTE);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.levelup.core.qr;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Payloads and reference output shared by the QR code tests.
+ */
+final class QrCodeTestData {
+
+    /**
+     * A payment code in the shape the LevelUp SDK encodes: the payment token, then the color and
+     * tip.
+     */
+    static final String LEVELUP_CODE =
+            "LU02000TESTTESTTESTTESTTESTTESTTESTTESTTESTTESTTESTTESTTESTTESTTESTTESTTESTTEST030LU";
+
+    /**
+     * Payloads of several QR versions, from the smallest up.
+     */
+    static final String[] PAYLOADS = {
+            "a",
+            "LevelUp",
+            LEVELUP_CODE,
+            LEVELUP_CODE + LEVELUP_CODE + LEVELUP_CODE
+    };
+
+    /**
+     * Palette for {@link IntRaster}s, with values that can't be mistaken for each other or for an
+     * unwritten pixel.
+     */
+    static final int[] INT_PALETTE = { 0xffffffff, 0xff000000 };
+
+    /**
+     * Palette for {@link ByteRaster}s, as used for alpha masks.
+     */
+    static final byte[] BYTE_PALETTE = { 0, (byte) 0xff };
+
+    private QrCodeTestData() {
+        throw new UnsupportedOperationException("This class is non-instantiable");
+    }
+
+    /**
+     * Encodes a payload with ZXing's own writer, at one pixel per module.
+     *
+     * @param data the payload.
+     * @param quietZoneSize the number of modules of white space around the code.
+     * @return the reference code, quiet zone included.
+     * @throws WriterException if the payload couldn't be encoded.
+     */
+    static BitMatrix encodeWithZXing(String data, int quietZoneSize) throws WriterException {
+        Map<EncodeHintType, Object> hints =
+                new EnumMap<EncodeHintType, Object>(EncodeHintType.class);
+        hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.L);
+        hints.put(EncodeHintType.MARGIN, quietZoneSize);
+
+        return new QRCodeWriter().encode(data, BarcodeFormat.QR_CODE, 0, 0, hints);
+    }
+
+    /**
+     * Checks a rendered code against ZXing's. The renderer's output is rotated by 180° from
+     * ZXing's, so pixel (x, y) corresponds to ZXing's (width - 1 - x, height - 1 - y).
+     *
+     * @param expected ZXing's code.
+     * @param raster the rendered code.
+     * @param palette the palette it was rendered with.
+     */
+    static void assertMatches(BitMatrix expected, IntRaster raster, int[] palette) {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+
+        assertEquals(width, raster.getWidth());
+        assertEquals(height, raster.getHeight());
+
+        int[] pixels = raster.getPixels();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean isOn = expected.get(width - 1 - x, height - 1 - y);
+
+                assertEquals("Pixel " + x + ", " + y, palette[isOn ? 1 : 0],
+                        pixels[y * raster.getStride() + x]);
+            }
+        }
+    }
+
+    /**
+     * Checks a rendered single-channel code against ZXing's. See
+     * {@link #assertMatches(BitMatrix, IntRaster, int[])}.
+     *
+     * @param expected ZXing's code.
+     * @param raster the rendered code.
+     * @param palette the palette it was rendered with.
+     */
+    static void assertMatches(BitMatrix expected, ByteRaster raster, byte[] palette) {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+
+        assertEquals(width, raster.getWidth());
+        assertEquals(height, raster.getHeight());
+
+        byte[] pixels = raster.getPixels();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean isOn = expected.get(width - 1 - x, height - 1 - y);
+
+                assertEquals("Pixel " + x + ", " + y, palette[isOn ? 1 : 0],
+                        pixels[y * raster.getStride() + x]);
+            }
+        }
+    }
+}